@@ -0,0 +1,94 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects block changes so they can be made all at once, grouped by chunk.
+ * <p>
+ * Grouping by chunk means we only work out once per chunk which block updates a change needs.
+ * Chunks no player is watching, and where entities aren't ticking, skip client updates entirely.
+ * Chunks with ticking entities (e.g. spawn or force-loaded chunks) still need them even without players, since
+ * {@link ServerLevel#sendBlockUpdated} is also where mobs re-plan their paths around changed blocks.
+ * Vanilla already sends everything that changed in a section during a tick as one packet, so this doesn't change
+ * what goes over the wire for watched chunks.
+ */
+public class BlockWriteBatch {
+    /** Pending writes, keyed by {@link ChunkPos#toLong()}. */
+    private final Long2ObjectLinkedOpenHashMap<Writes> chunks = new Long2ObjectLinkedOpenHashMap<>();
+
+    /** Queues a block change. Nothing happens until {@link #apply}. */
+    public void set(BlockPos pos, BlockState state) {
+        long chunkKey = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+        Writes writes = this.chunks.get(chunkKey);
+        if (writes == null) {
+            writes = new Writes();
+            this.chunks.put(chunkKey, writes);
+        }
+        writes.positions.add(pos.asLong());
+        writes.states.add(state);
+    }
+
+    public boolean isEmpty() {
+        return this.chunks.isEmpty();
+    }
+
+    /**
+     * Makes every queued change, then empties the batch.
+     * <p>
+     * Neighbors are always updated, since that's what makes water start (or stop) flowing.
+     * @param onWritten Called with the position of each change that was actually made.
+     * @return The number of changes made.
+     */
+    public int apply(ServerLevel level, Consumer<BlockPos> onWritten) {
+        int written = 0;
+        for (Long2ObjectMap.Entry<Writes> chunk : Long2ObjectMaps.fastIterable(this.chunks)) {
+            int flags = needsUpdates(level, new ChunkPos(chunk.getLongKey())) ? Block.UPDATE_ALL : Block.UPDATE_NEIGHBORS;
+
+            Writes writes = chunk.getValue();
+            for (int i = 0; i < writes.positions.size(); i++) {
+                BlockPos pos = BlockPos.of(writes.positions.getLong(i));
+                if (level.setBlock(pos, writes.states.get(i), flags)) {
+                    onWritten.accept(pos);
+                    written++;
+                }
+            }
+        }
+
+        this.chunks.clear();
+        return written;
+    }
+
+    /**
+     * Whether changes to the given chunk need block updates sent: either a player has it loaded,
+     * or entities are ticking there and their navigation has to hear about the change.
+     */
+    private static boolean needsUpdates(ServerLevel level, ChunkPos chunkPos) {
+        return !level.getChunkSource().chunkMap.getPlayers(chunkPos, false).isEmpty()
+            || level.isPositionEntityTicking(chunkPos.getWorldPosition());
+    }
+
+    /** One chunk's pending writes, as parallel lists of packed {@link BlockPos#asLong()} positions and states. */
+    private static class Writes {
+        private final LongArrayList positions = new LongArrayList();
+        private final List<BlockState> states = new ArrayList<>();
+    }
+}
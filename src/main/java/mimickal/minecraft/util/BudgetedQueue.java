@@ -0,0 +1,98 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.util;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * A queue of work that's drained a little at a time, so it never takes more than a set amount of time per tick.
+ * <p>
+ * Work that doesn't fit in a tick's budget stays queued for the next tick.
+ * The queue has a max size, so if we keep falling behind, new work is dropped instead of piling up forever.
+ * <p>
+ * This also keeps some numbers about itself, so we can tell how well it's keeping up.
+ */
+public class BudgetedQueue<T> {
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+
+    private long processed = 0;
+    private long dropped = 0;
+    private int peakDepth = 0;
+    private long lastDrainNanos = 0;
+
+    /**
+     * Adds work to the end of the queue, unless the queue is already full.
+     * @return Whether the work was queued.
+     */
+    public boolean offer(T work, int maxDepth) {
+        if (this.queue.size() >= maxDepth) {
+            this.dropped++;
+            return false;
+        }
+
+        this.queue.addLast(work);
+        this.peakDepth = Math.max(this.peakDepth, this.queue.size());
+        return true;
+    }
+
+    /**
+     * Works through the queue until it's empty or the budget runs out.
+     * At least one piece of work is always done, so the queue keeps moving even with a tiny budget.
+     * @return The number of pieces of work done.
+     */
+    public int drain(long budgetNanos, Consumer<T> worker) {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int done = 0;
+
+        while (!this.queue.isEmpty()) {
+            worker.accept(this.queue.pollFirst());
+            done++;
+            if (System.nanoTime() > deadline) break;
+        }
+
+        this.processed += done;
+        this.lastDrainNanos = System.nanoTime() - start;
+        return done;
+    }
+
+    /** Throws away all queued work. This doesn't count as dropped. */
+    public void clear() {
+        this.queue.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+
+    /** How much work is waiting right now. */
+    public int depth() {
+        return this.queue.size();
+    }
+
+    /** The most work that's ever been waiting at once. */
+    public int peakDepth() {
+        return this.peakDepth;
+    }
+
+    /** Total pieces of work done. */
+    public long processed() {
+        return this.processed;
+    }
+
+    /** Total pieces of work turned away because the queue was full. */
+    public long dropped() {
+        return this.dropped;
+    }
+
+    /** How long the most recent {@link #drain} took, in nanoseconds. */
+    public long lastDrainNanos() {
+        return this.lastDrainNanos;
+    }
+}
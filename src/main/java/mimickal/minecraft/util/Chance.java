@@ -7,21 +7,68 @@
  ****************************************************************************************/
 package mimickal.minecraft.util;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
 
 public class Chance {
-    private static final Random random = new Random();
-
     /** Returns `true` `chance` percent of the time. */
-    public static boolean percent(double chance) {
+    public static boolean percent(RandomGenerator random, double chance) {
         return random.nextDouble(100) < chance;
     }
 
     /** Treats a decimal between 0 and 1 as a percent, and returns `true` that percent of the time. */
-    public static boolean decimal(double dec) {
+    public static boolean decimal(RandomGenerator random, double dec) {
         return random.nextDouble() < dec;
     }
 
+    /**
+     * Picks each index from {@code 0} to {@code count - 1} with {@code chance} percent probability.
+     * <p>
+     * This gives exactly the same odds as calling {@link #percent} once per index, but without actually doing that.
+     * Instead, we roll how many indices to skip before the next pick. The gaps between successes in a run of
+     * independent trials follow a geometric distribution, so one roll per pick covers all the trials in between.
+     * With a 2% chance, that's one random number per 50 indices instead of one each.
+     * @return The picked indices, in increasing order.
+     */
+    public static IntStream sampleIndices(RandomGenerator random, int count, double chance) {
+        if (chance <= 0 || count <= 0) return IntStream.empty();
+        if (chance >= 100) return IntStream.range(0, count);
+
+        double logMiss = Math.log1p(-chance / 100);
+        return IntStream.iterate(
+            skip(random, logMiss),
+            index -> index < count,
+            index -> (int) Math.min((long) index + 1 + skip(random, logMiss), Integer.MAX_VALUE)
+        );
+    }
+
+    /**
+     * Counts successes in {@code trials} independent rolls of a {@code dec} (0.0 - 1.0) chance, stopping at {@code max}.
+     * <p>
+     * This is a draw from a binomial distribution, worked out the same way as {@link #sampleIndices}:
+     * one random number per success instead of one per trial. That makes it cheap to catch up on
+     * a long stretch of time all at once, as long as the chance is small.
+     */
+    public static int binomial(RandomGenerator random, long trials, double dec, int max) {
+        if (dec <= 0 || trials <= 0 || max <= 0) return 0;
+        if (dec >= 1) return (int) Math.min(trials, max);
+
+        double logMiss = Math.log1p(-dec);
+        int successes = 0;
+        long trial = skip(random, logMiss);
+        while (trial < trials && successes < max) {
+            successes++;
+            trial += 1L + skip(random, logMiss);
+        }
+        return successes;
+    }
+
+    /** Rolls how many trials fail before the next success. See {@link #sampleIndices}. */
+    private static int skip(RandomGenerator random, double logMiss) {
+        // 1 - nextDouble() is never 0, so the log is always finite.
+        return (int) Math.min(Math.floor(Math.log(1 - random.nextDouble()) / logMiss), Integer.MAX_VALUE);
+    }
+
     /**
      * Scales the chance of a single event to be inversely proportional with its smoothness.
      * <p>
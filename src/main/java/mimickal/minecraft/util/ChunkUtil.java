@@ -11,10 +11,13 @@ import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
 
-import java.util.function.Function;
-import java.util.stream.IntStream;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -28,39 +31,108 @@ public class ChunkUtil {
     }
 
     /**
-     * Returns a random block in the given chunk.
+     * Whether the given section might have a block matching the predicate, going only by its palette.
      * <p>
-     * A chunk can span multiple biomes if it's right on the edge.
-     * Picking a random spot every time means that the rate of biome-specific calculations
-     * will be roughly equal to the percentage of this chunk contained within that biome.
-     * e.g. if 40% of the biome is Jungle, ~40% of the time we'll get a Jungle block.
+     * A section's palette lists every state it holds (and sometimes a few it used to), so if nothing in the palette
+     * matches, nothing in the section does either. This is much cheaper than looking at all 4096 blocks.
      */
-    public static BlockPos getRandomPosInChunk(ServerLevel world, ChunkHolder chunkHolder) {
-        return getRandomPosInChunk(world, chunkHolder.getPos());
+    public static boolean sectionMayContain(LevelChunkSection section, Predicate<BlockState> predicate) {
+        return !section.hasOnlyAir() && section.getStates().maybeHas(predicate);
     }
 
-    public static BlockPos getRandomPosInChunk(ServerLevel world, LevelChunk chunk) {
-        return getRandomPosInChunk(world, chunk.getPos());
+    /** Counts the blocks in the whole chunk that match the predicate, skipping sections that can't have any. */
+    public static int countBlocks(LevelChunk chunk, Predicate<BlockState> predicate) {
+        int count = 0;
+        for (LevelChunkSection section : chunk.getSections()) {
+            if (!sectionMayContain(section, predicate)) continue;
+
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        if (predicate.test(section.getBlockState(x, y, z))) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
     }
-    
-    public static BlockPos getRandomPosInChunk(ServerLevel world, ChunkPos chunkPos) {
-        return world.getBlockRandomPos(
-            chunkPos.getMinBlockX(), 0 /* Y */, chunkPos.getMinBlockZ(), 15 /* Chunk width */
-        );
+
+    /**
+     * Calls {@code found} with the packed {@link BlockPos#asLong()} of every block in the chunk that matches
+     * the predicate, skipping sections that can't have any.
+     */
+    public static void findBlocks(LevelChunk chunk, Predicate<BlockState> predicate, LongConsumer found) {
+        ChunkPos chunkPos = chunk.getPos();
+        for (LevelChunkSection section : chunk.getSections()) {
+            if (!sectionMayContain(section, predicate)) continue;
+
+            int bottomY = section.bottomBlockY();
+            for (int y = 0; y < 16; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        if (predicate.test(section.getBlockState(x, y, z))) {
+                            found.accept(BlockPos.asLong(chunkPos.getBlockX(x), bottomY + y, chunkPos.getBlockZ(z)));
+                        }
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * Gets a horizontal slice of blocks in a chunk.
-     * <p>
-     * This is essentially a cartesian product of the chunk's x and z block ranges.<br/>
-     * {@code range(minX, maxX) x range(minZ, maxZ)}
+     * Finds every column whose surface block (the top block by the given heightmap) matches the predicate.
+     * Columns whose surface is in a section that can't have a match are skipped without reading the block.
+     * @return A 256-bit map in 4 longs, where bit {@code (z << 4) | x} is set for matching column (x, z).
      */
-    public static Stream<BlockPos> blocksInChunkArea(LevelChunk chunk) {
-        ChunkPos pos = chunk.getPos();
-        return IntStream.rangeClosed(pos.getMinBlockX(), pos.getMaxBlockX()).mapToObj(x -> (
-            IntStream.rangeClosed(pos.getMinBlockZ(), pos.getMaxBlockZ()).mapToObj(z -> (
-                new BlockPos(x, 0, z)
-            ))
-        )).flatMap(Function.identity());
+    public static long[] surfaceColumns(LevelChunk chunk, Heightmap.Types heightmap, Predicate<BlockState> predicate) {
+        long[] columns = new long[4];
+        SurfaceScan scan = new SurfaceScan(chunk, heightmap, predicate);
+
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                if (scan.matches(x, z)) {
+                    int bit = (z << 4) | x;
+                    columns[bit >> 6] |= 1L << bit;
+                }
+            }
+        }
+
+        return columns;
+    }
+
+    /** Reads surface blocks straight out of a chunk's sections, remembering which sections can't match. */
+    private static class SurfaceScan {
+        private static final byte UNKNOWN = 0;
+        private static final byte MAYBE = 1;
+        private static final byte NEVER = 2;
+
+        private final LevelChunk chunk;
+        private final Heightmap.Types heightmap;
+        private final Predicate<BlockState> predicate;
+        private final LevelChunkSection[] sections;
+        private final byte[] sectionMatches;
+
+        SurfaceScan(LevelChunk chunk, Heightmap.Types heightmap, Predicate<BlockState> predicate) {
+            this.chunk = chunk;
+            this.heightmap = heightmap;
+            this.predicate = predicate;
+            this.sections = chunk.getSections();
+            this.sectionMatches = new byte[this.sections.length];
+        }
+
+        boolean matches(int x, int z) {
+            int y = this.chunk.getHeight(this.heightmap, x, z);
+            int index = this.chunk.getSectionIndex(y);
+            if (index < 0 || index >= this.sections.length) return false; // Empty column
+
+            if (this.sectionMatches[index] == UNKNOWN) {
+                this.sectionMatches[index] = sectionMayContain(this.sections[index], this.predicate) ? MAYBE : NEVER;
+            }
+            if (this.sectionMatches[index] == NEVER) return false;
+
+            return this.predicate.test(this.sections[index].getBlockState(x, y & 15, z));
+        }
     }
 }
@@ -7,7 +7,7 @@
  ****************************************************************************************/
 package mimickal.minecraft.util;
 
-import net.minecraftforge.common.ForgeConfigSpec;
+import java.util.random.RandomGenerator;
 
 /** An easy wrapper for only running an event every X ticks. Contains several variants. */
 public abstract class TickGuard {
@@ -33,24 +33,6 @@ public abstract class TickGuard {
         }
     }
 
-    /** A {@link TickGuard} based on a configuration smoothness percentage. */
-    public static class Config extends TickGuard {
-        private static final int MAX_TICK_DELAY = 5 * 20; // Roughly 5 seconds
-
-        private final ForgeConfigSpec.DoubleValue smoothness;
-
-        public Config(ForgeConfigSpec.DoubleValue smoothness) {
-            super();
-            this.smoothness = smoothness;
-            updateDelay();
-        }
-
-        @Override
-        public void updateDelay() {
-            this.delay = (int)((100 - this.smoothness.get()) / 100 * MAX_TICK_DELAY);
-        }
-    }
-
     /** A {@link TickGuard} that has a constant delay time. */
     public static class Constant extends TickGuard {
         public Constant(int delay) {
@@ -60,13 +42,13 @@ public abstract class TickGuard {
 
     /** A {@link TickGuard} that picks a random delay within a range. */
     public static class Random extends TickGuard {
-        private static final java.util.Random RANDOM = new java.util.Random();
-
+        private final RandomGenerator random;
         private final int lower;
         private final int upper;
 
-        public Random(int lower, int upper) {
+        public Random(RandomGenerator random, int lower, int upper) {
             super();
+            this.random = random;
             this.lower = lower;
             this.upper = upper;
             updateDelay();
@@ -74,7 +56,7 @@ public abstract class TickGuard {
 
         @Override
         public void updateDelay() {
-            this.delay = RANDOM.nextInt(this.lower, this.upper + 1);
+            this.delay = this.random.nextInt(this.lower, this.upper + 1);
         }
     }
 }
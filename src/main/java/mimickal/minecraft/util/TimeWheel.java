@@ -0,0 +1,128 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.util;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Spreads things out over a fixed number of slots, so we can visit one slot per tick instead of everything at once.
+ * <p>
+ * Each thing is hashed into a slot by its key, and {@link #advance} hands out the slots one after another,
+ * wrapping around at the end. Everything gets visited exactly once per lap, and each tick only sees
+ * about {@code total / slots} things, instead of nothing for a while and then everything in one tick.
+ * <p>
+ * Adding and removing are constant time. Removing moves the last thing in a slot into the gap.
+ */
+public class TimeWheel<T> {
+    private final List<List<T>> slots = new ArrayList<>();
+    /** Keys of each slot's things, in the same order, so we can find whatever gets moved by a removal. */
+    private final List<LongArrayList> slotKeys = new ArrayList<>();
+    /** Where each key is within its slot. The slot itself is worked out from the key. */
+    private final Long2IntOpenHashMap positions = new Long2IntOpenHashMap();
+    private int current = 0;
+
+    public TimeWheel(int slots) {
+        this.positions.defaultReturnValue(-1);
+        createSlots(slots);
+    }
+
+    /** Adds a thing, replacing whatever was already there with the same key. */
+    public void add(long key, T thing) {
+        int slot = slotOf(key);
+        int position = this.positions.get(key);
+        if (position >= 0) {
+            this.slots.get(slot).set(position, thing);
+            return;
+        }
+
+        this.positions.put(key, this.slots.get(slot).size());
+        this.slots.get(slot).add(thing);
+        this.slotKeys.get(slot).add(key);
+    }
+
+    public void remove(long key) {
+        int position = this.positions.remove(key);
+        if (position < 0) return;
+
+        int slot = slotOf(key);
+        List<T> things = this.slots.get(slot);
+        LongArrayList keys = this.slotKeys.get(slot);
+
+        int lastPosition = things.size() - 1;
+        T lastThing = things.remove(lastPosition);
+        long lastKey = keys.removeLong(lastPosition);
+        if (position < lastPosition) {
+            things.set(position, lastThing);
+            keys.set(position, lastKey);
+            this.positions.put(lastKey, position);
+        }
+    }
+
+    /** Number of slots. */
+    public int slots() {
+        return this.slots.size();
+    }
+
+    /** Number of things across all slots. */
+    public int size() {
+        return this.positions.size();
+    }
+
+    /**
+     * Changes the number of slots, re-hashing everything into the new slots.
+     * This touches everything on the wheel, but it only happens when the slot count actually changes.
+     */
+    public void resize(int slots) {
+        if (slots == this.slots.size()) return;
+
+        List<List<T>> oldSlots = new ArrayList<>(this.slots);
+        List<LongArrayList> oldKeys = new ArrayList<>(this.slotKeys);
+        this.positions.clear();
+        createSlots(slots);
+
+        for (int slot = 0; slot < oldSlots.size(); slot++) {
+            for (int i = 0; i < oldSlots.get(slot).size(); i++) {
+                add(oldKeys.get(slot).getLong(i), oldSlots.get(slot).get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the things in the current slot, then moves on to the next slot.
+     * The returned list is live and read-only, so don't hold on to it past the current tick.
+     */
+    public List<T> advance() {
+        if (this.current >= this.slots.size()) {
+            this.current = 0;
+        }
+        return Collections.unmodifiableList(this.slots.get(this.current++));
+    }
+
+    private void createSlots(int slots) {
+        if (slots < 1) throw new IllegalArgumentException("A time wheel needs at least one slot, got " + slots);
+
+        this.slots.clear();
+        this.slotKeys.clear();
+        for (int i = 0; i < slots; i++) {
+            this.slots.add(new ArrayList<>());
+            this.slotKeys.add(new LongArrayList());
+        }
+        this.current = this.current % slots;
+    }
+
+    private int slotOf(long key) {
+        // Mix the key first, since neighboring chunk positions only differ in their low bits.
+        return (int) Long.remainderUnsigned(HashCommon.mix(key), this.slots.size());
+    }
+}
@@ -8,6 +8,8 @@
 package mimickal.minecraft.waterworks;
 
 import com.google.common.collect.ImmutableList;
+import mimickal.minecraft.waterworks.eva.AccumulationBlacklist;
+import mimickal.minecraft.waterworks.eva.storage.StorageMode;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.level.block.*;
 import net.minecraftforge.common.ForgeConfigSpec;
@@ -25,6 +27,8 @@ public class Config {
     public static ForgeConfigSpec.BooleanValue accumulationEnabled;
     public static ForgeConfigSpec.DoubleValue accumulationIntensity;
     public static ForgeConfigSpec.DoubleValue accumulationSmoothness;
+    public static ForgeConfigSpec.IntValue accumulationBudgetMicros;
+    public static ForgeConfigSpec.IntValue accumulationMaxQueued;
     public static ForgeConfigSpec.ConfigValue<Integer> accumulationMaxHeight;
     public static ForgeConfigSpec.ConfigValue<List<? extends String>> accumulationBlacklist;
 
@@ -32,6 +36,8 @@ public class Config {
     public static ForgeConfigSpec.BooleanValue evaporationEnabled;
     public static ForgeConfigSpec.DoubleValue evaporationIntensity;
     public static ForgeConfigSpec.DoubleValue evaporationSmoothness;
+    public static ForgeConfigSpec.IntValue evaporationBudgetMicros;
+    public static ForgeConfigSpec.IntValue evaporationMaxQueued;
     public static ForgeConfigSpec.ConfigValue<Integer> evaporationMaxHeight;
     public static ForgeConfigSpec.DoubleValue evaporationSunCoefficient;
     public static ForgeConfigSpec.BooleanValue chunkVanillaHumidity;
@@ -40,6 +46,28 @@ public class Config {
     // Rain fields
     public static ForgeConfigSpec.BooleanValue rainModEnabled;
     public static ForgeConfigSpec.ConfigValue<Integer> rainChunkHumidityThreshold;
+    public static ForgeConfigSpec.BooleanValue rainDebugAggregate;
+    public static ForgeConfigSpec.BooleanValue rainRegional;
+    public static ForgeConfigSpec.IntValue rainRegionalRadius;
+
+    // Rain collector fields
+    public static ForgeConfigSpec.BooleanValue collectorsEnabled;
+    public static ForgeConfigSpec.IntValue collectorsIntervalTicks;
+    public static ForgeConfigSpec.IntValue collectorsSecondsPerLevel;
+
+    // Diffusion fields
+    public static ForgeConfigSpec.BooleanValue diffusionEnabled;
+    public static ForgeConfigSpec.IntValue diffusionIntervalTicks;
+    public static ForgeConfigSpec.DoubleValue diffusionRate;
+    public static ForgeConfigSpec.IntValue diffusionBudgetMicros;
+
+    // Random fields
+    public static ForgeConfigSpec.LongValue randomSeed;
+
+    // Storage fields
+    public static ForgeConfigSpec.EnumValue<StorageMode> storageMode;
+    public static ForgeConfigSpec.IntValue storageMaxLoadedRegions;
+    public static ForgeConfigSpec.BooleanValue storageJournal;
 
     // Constants
     // These need to be defined before the below static block
@@ -61,6 +89,10 @@ public class Config {
         buildAccumulationConfig(builder);
         addEvaporationConfig(builder);
         addRainConfig(builder);
+        addCollectorsConfig(builder);
+        addDiffusionConfig(builder);
+        addRandomConfig(builder);
+        addStorageConfig(builder);
         CONFIG_SPEC = builder.build();
     }
 
@@ -89,10 +121,26 @@ public class Config {
         accumulationSmoothness = builder
             .comment(
                 "Smoothness controls how frequently water accumulates.",
-                "Higher smoothness means less time between accumulation cycles."
+                "Loaded chunks take turns, a few each tick. Higher smoothness means each chunk gets a turn",
+                "more often (with a lower chance each time), so the same amount of water accumulates more evenly."
             )
             .defineInRange("smoothness_percent", 20d, 0d, 100d);
 
+        accumulationBudgetMicros = builder
+            .comment(
+                "Max time (in microseconds) per tick spent on accumulation.",
+                "Each cycle's chunks are queued up and worked through a few at a time,",
+                "so a big cycle is spread over several ticks instead of causing a lag spike."
+            )
+            .defineInRange("tick_budget_micros", 1000, 1, 50_000);
+
+        accumulationMaxQueued = builder
+            .comment(
+                "Max number of chunks waiting to be processed. If accumulation can't keep up, extra chunks are skipped.",
+                "You can check how it's keeping up with \"/humidity stats\"."
+            )
+            .defineInRange("max_queued_chunks", 4096, 1, Integer.MAX_VALUE);
+
         accumulationMaxHeight = builder
             .comment(
                 "Controls how high water is allowed to accumulate above its starting height (in a biome).",
@@ -103,6 +151,7 @@ public class Config {
         accumulationBlacklist = builder
             .comment(
                 "Never accumulate water on top of these blocks. These are the blocks' registry names.",
+                "Block tags work too, with a # in front (e.g. \"#minecraft:crops\").",
                 "Useful to avoid breaking surface lava and crops with accumulated water."
             )
             .defineList("blacklist",
@@ -116,10 +165,7 @@ public class Config {
                     .filter(Objects::nonNull)
                     .map(ResourceLocation::toString)
                     .toList(),
-                (blockName) -> (
-                    blockName instanceof String &&
-                    ForgeRegistries.BLOCKS.containsKey(new ResourceLocation((String) blockName))
-                )
+                AccumulationBlacklist::isValidEntry
             );
 
         builder.pop();
@@ -145,10 +191,26 @@ public class Config {
         evaporationSmoothness = builder
             .comment(
                 "Smoothness controls how frequently water evaporates.",
-                "Higher smoothness means less time between evaporation cycles."
+                "Loaded chunks take turns, a few each tick. Higher smoothness means each chunk gets a turn",
+                "more often (with a lower chance each time), so the same amount of water evaporates more evenly."
             )
             .defineInRange("smoothness_percent", 20d, 0d, 100d);
 
+        evaporationBudgetMicros = builder
+            .comment(
+                "Max time (in microseconds) per tick spent on evaporation.",
+                "Each cycle's chunks are queued up and worked through a few at a time,",
+                "so a big cycle is spread over several ticks instead of causing a lag spike."
+            )
+            .defineInRange("tick_budget_micros", 1000, 1, 50_000);
+
+        evaporationMaxQueued = builder
+            .comment(
+                "Max number of chunks waiting to be processed. If evaporation can't keep up, extra chunks are skipped.",
+                "You can check how it's keeping up with \"/humidity stats\"."
+            )
+            .defineInRange("max_queued_chunks", 4096, 1, Integer.MAX_VALUE);
+
         evaporationMaxHeight = builder
             .comment(
                 "Controls how low water is allowed to evaporate below its starting height (in a biome).",
@@ -202,6 +264,150 @@ public class Config {
             )
             .defineInRange("humidity_threshold", 5_000, 0, Integer.MAX_VALUE);
 
+        rainDebugAggregate = builder
+            .comment(
+                "Debugging option. Humidity across loaded chunks is tracked as a running total.",
+                "Enabling this recounts every loaded chunk on each rain check and logs a warning if the total was off.",
+                "This is slow with lots of chunks loaded. Leave it disabled unless you're chasing a bug."
+            )
+            .define("debug_verify_totals", false);
+
+        rainRegional = builder
+            .comment(
+                "Decide rain separately for each 16x16 chunk area, based on that area's humidity,",
+                "instead of once for the whole dimension. Good for multiplayer servers where players are spread out.",
+                "Vanilla only has one weather per dimension, so players see rain if any player is in a raining area.",
+                "Water only accumulates (and only stops evaporating) in areas that are actually raining."
+            )
+            .define("regional", false);
+
+        rainRegionalRadius = builder
+            .comment(
+                "Only applies to regional rain.",
+                "How many neighboring areas (in each direction) count towards an area's humidity.",
+                "Higher values make neighboring areas' weather agree more often. 0 only uses the area itself."
+            )
+            .defineInRange("regional_radius", 1, 0, 16);
+
+        builder.pop();
+    }
+
+    private static void addCollectorsConfig(ForgeConfigSpec.Builder builder) {
+        builder.comment("Settings for blocks that collect rain (anything in the waterworks:rain_collectors block tag)");
+        builder.push("rain collectors");
+
+        collectorsEnabled = builder
+            .comment(
+                "Enable/disable rain collectors. Cauldrons (and other blocks in the tag) left out in the rain",
+                "slowly fill with water, taking it from the chunk's humidity."
+            )
+            .define("enabled", true);
+
+        collectorsIntervalTicks = builder
+            .comment(
+                "How many ticks between visits to each chunk with collectors in it.",
+                "Each visit catches up on all the rain since the last one, so this doesn't change how fast",
+                "collectors fill, only how often. Higher values spread the work more thinly."
+            )
+            .defineInRange("interval_ticks", 100, 1, 24_000);
+
+        collectorsSecondsPerLevel = builder
+            .comment(
+                "Average time (in seconds) in the rain for a collector to fill by one level.",
+                "A cauldron has 3 levels, and filling one all the way takes exactly one bucket from the chunk's humidity."
+            )
+            .defineInRange("seconds_per_level", 300, 1, Integer.MAX_VALUE);
+
+        builder.pop();
+    }
+
+    private static void addDiffusionConfig(ForgeConfigSpec.Builder builder) {
+        builder.comment("Settings for humidity spreading between neighboring chunks");
+        builder.push("diffusion");
+
+        diffusionEnabled = builder
+            .comment(
+                "Enable/disable humidity spreading between neighboring loaded chunks.",
+                "This lets water evaporated over oceans and lakes eventually rain down further inland."
+            )
+            .define("enabled", false);
+
+        diffusionIntervalTicks = builder
+            .comment(
+                "How many ticks to wait between spreading steps. Requires a restart.",
+                "Each step is worked out on background threads, so this mostly controls how fast humidity spreads."
+            )
+            .defineInRange("interval_ticks", 200, 1, Integer.MAX_VALUE);
+
+        diffusionRate = builder
+            .comment(
+                "The fraction of the humidity difference between two neighboring chunks that moves each step.",
+                "Values close to the max spread humidity quickly, but can make it slosh back and forth."
+            )
+            .defineInRange("rate", 0.05, 0d, 0.25);
+
+        diffusionBudgetMicros = builder
+            .comment(
+                "Max time (in microseconds) per tick spent applying a step's results on the main thread.",
+                "Whatever doesn't fit is applied on the following ticks."
+            )
+            .defineInRange("tick_budget_micros", 1000, 1, 50_000);
+
+        builder.pop();
+    }
+
+    private static void addRandomConfig(ForgeConfigSpec.Builder builder) {
+        builder.comment("Settings for the random numbers behind accumulation, evaporation, and rain");
+        builder.push("random");
+
+        randomSeed = builder
+            .comment(
+                "Seed for the random numbers used by accumulation, evaporation, and rain.",
+                "Each dimension and system gets its own sequence of random numbers derived from this.",
+                "The same seed and config produce the same sequence of dice rolls, which is handy for testing.",
+                "0 uses the world seed. Requires a restart."
+            )
+            .defineInRange("seed", 0L, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        builder.pop();
+    }
+
+    private static void addStorageConfig(ForgeConfigSpec.Builder builder) {
+        builder.comment("Humidity data storage settings");
+        builder.push("storage");
+
+        storageMode = builder
+            .comment(
+                "Where per-chunk humidity data is saved.",
+                "REGION saves data in region files alongside the level's other data. Good for most worlds.",
+                "CHUNK saves data inside each chunk. Only loaded chunks are kept in memory,",
+                "but changes made to unloaded chunks (e.g. with commands) are discarded.",
+                "MAPPED keeps data in memory-mapped region files outside the Java heap. Saving is nearly free.",
+                "Best for very large worlds with millions of explored chunks.",
+                "Changing this on an existing world does not carry humidity data over. Requires a restart."
+            )
+            .defineEnum("mode", StorageMode.REGION);
+
+        storageMaxLoadedRegions = builder
+            .comment(
+                "Only applies to REGION and MAPPED storage.",
+                "The max number of 32x32 chunk regions of humidity data to keep in memory (or mapped, for MAPPED).",
+                "The least recently used regions are saved and dropped once this is exceeded.",
+                "0 means no limit for REGION, and a limit of 4096 for MAPPED.",
+                "Requires a restart."
+            )
+            .defineInRange("max_loaded_regions", 0, 0, Integer.MAX_VALUE);
+
+        storageJournal = builder
+            .comment(
+                "Only applies to REGION storage.",
+                "Log humidity changes to an append-only journal instead of rewriting regions every save.",
+                "Regions are only rewritten once the journal gets large, so saves are much cheaper",
+                "in worlds where humidity changes constantly. At most about a second of changes is lost on a crash.",
+                "Requires a restart."
+            )
+            .define("journal", false);
+
         builder.pop();
     }
 }
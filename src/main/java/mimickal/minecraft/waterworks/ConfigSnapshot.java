@@ -0,0 +1,133 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks;
+
+import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.Chance;
+import mimickal.minecraft.waterworks.eva.LoadedChunks;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link Config} values the tick handlers need, read out once into plain fields.
+ * <p>
+ * Every {@link net.minecraftforge.common.ForgeConfigSpec.ConfigValue#get()} goes through the config's backing map
+ * and unboxes the result, which adds up when it's done for every chunk, every tick.
+ * This is rebuilt whenever the config is loaded or changed, and everything derived from the config
+ * (e.g. scaled chances and wheel sizes) is worked out here once instead of on every use.
+ * <p>
+ * Settings that require a restart (storage, random seed) aren't in here. Those are only read once anyway.
+ */
+public record ConfigSnapshot(
+    // Accumulation
+    boolean accumulationEnabled,
+    /** Percent chance a scheduled chunk is picked. See {@link Chance#scaleWithSmoothness}. */
+    double accumulationChance,
+    /** See {@link LoadedChunks#wheelSlots}. */
+    int accumulationWheelSlots,
+    long accumulationBudgetNanos,
+    int accumulationMaxQueued,
+
+    // Evaporation
+    boolean evaporationEnabled,
+    /** Percent chance a scheduled chunk is picked. See {@link Chance#scaleWithSmoothness}. */
+    double evaporationChance,
+    /** See {@link LoadedChunks#wheelSlots}. */
+    int evaporationWheelSlots,
+    long evaporationBudgetNanos,
+    int evaporationMaxQueued,
+    /** The evaporation scale at night. This is 1 - {@link Config#evaporationSunCoefficient}. */
+    double evaporationSunMin,
+    boolean chunkVanillaHumidity,
+    /** A chunk's default humidity (in mB) before any biome downfall scaling. */
+    double chunkDefaultHumidity,
+
+    // Rain
+    /** Whether we control rain at all. This needs accumulation and evaporation enabled too. */
+    boolean rainEnabled,
+    int rainChunkHumidityThreshold,
+    boolean rainDebugAggregate,
+    boolean rainRegional,
+    int rainRegionalRadius,
+
+    // Rain collectors
+    boolean collectorsEnabled,
+    /** Number of time wheel slots, one per tick of {@link Config#collectorsIntervalTicks}. */
+    int collectorsWheelSlots,
+    /** Chance (0.0 - 1.0) a collector fills by one level in a single rainy tick. */
+    double collectorsFillChance,
+
+    // Diffusion
+    boolean diffusionEnabled,
+    int diffusionIntervalTicks,
+    double diffusionRate,
+    long diffusionBudgetNanos
+) {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /**
+     * The current snapshot.
+     * Config reloads happen on another thread, so this is swapped out whole rather than modified.
+     */
+    private static volatile ConfigSnapshot CURRENT = null;
+
+    /** Gets the current snapshot. Reads the config right away if it hasn't been read yet. */
+    public static ConfigSnapshot get() {
+        ConfigSnapshot snapshot = CURRENT;
+        if (snapshot == null) {
+            snapshot = compile();
+        }
+        return snapshot;
+    }
+
+    /** Rebuilds the snapshot when our config is loaded or changed. Lives on the mod event bus. */
+    public static void onConfigChange(ModConfigEvent event) {
+        if (event.getConfig().getSpec() != Config.CONFIG_SPEC) return;
+        compile();
+    }
+
+    private static ConfigSnapshot compile() {
+        ConfigSnapshot snapshot = new ConfigSnapshot(
+            Config.accumulationEnabled.get(),
+            Chance.scaleWithSmoothness(Config.accumulationIntensity.get(), Config.accumulationSmoothness.get()),
+            LoadedChunks.wheelSlots(Config.accumulationSmoothness.get()),
+            TimeUnit.MICROSECONDS.toNanos(Config.accumulationBudgetMicros.get()),
+            Config.accumulationMaxQueued.get(),
+
+            Config.evaporationEnabled.get(),
+            Chance.scaleWithSmoothness(Config.evaporationIntensity.get(), Config.evaporationSmoothness.get()),
+            LoadedChunks.wheelSlots(Config.evaporationSmoothness.get()),
+            TimeUnit.MICROSECONDS.toNanos(Config.evaporationBudgetMicros.get()),
+            Config.evaporationMaxQueued.get(),
+            1 - Config.evaporationSunCoefficient.get(),
+            Config.chunkVanillaHumidity.get(),
+            Config.chunkDefaultHumidityPercent.get() / 100 * Config.rainChunkHumidityThreshold.get(),
+
+            Config.accumulationEnabled.get() && Config.evaporationEnabled.get() && Config.rainModEnabled.get(),
+            Config.rainChunkHumidityThreshold.get(),
+            Config.rainDebugAggregate.get(),
+            Config.rainRegional.get(),
+            Config.rainRegionalRadius.get(),
+
+            Config.collectorsEnabled.get(),
+            Config.collectorsIntervalTicks.get(),
+            1d / (20 * Config.collectorsSecondsPerLevel.get()),
+
+            Config.diffusionEnabled.get(),
+            Config.diffusionIntervalTicks.get(),
+            Config.diffusionRate.get(),
+            TimeUnit.MICROSECONDS.toNanos(Config.diffusionBudgetMicros.get())
+        );
+
+        LOGGER.debug("Compiled config snapshot {}", snapshot);
+        CURRENT = snapshot;
+        return snapshot;
+    }
+}
@@ -9,6 +9,7 @@ package mimickal.minecraft.waterworks;
 
 import com.mojang.logging.LogUtils;
 import mimickal.minecraft.waterworks.decoration.Painting;
+import mimickal.minecraft.waterworks.eva.AccumulationBlacklist;
 import mimickal.minecraft.waterworks.eva.commands.HumidityCommand;
 import mimickal.minecraft.waterworks.eva.events.*;
 import mimickal.minecraft.waterworks.tool.Trades;
@@ -40,11 +41,14 @@ public class Waterworks
             // Block placement
             Statue.class,
 
+            // Chunk and level lifecycle
+            Lifecycle.class,
+
+            // Tags
+            AccumulationBlacklist.class,
+
             // Tick
-            Accumulation.class,
-            Bucket.class,
-            Evaporation.class,
-            Rain.class,
+            WeatherTick.class,
 
             // Trades
             Trades.class,
@@ -55,6 +59,8 @@ public class Waterworks
 
         // Register registries
         IEventBus eventBus = FMLJavaModLoadingContext.get().getModEventBus();
+        eventBus.addListener(AccumulationBlacklist::onConfigChange);
+        eventBus.addListener(ConfigSnapshot::onConfigChange);
 
         Stream.of(
             Painting.MOTIVE_REGISTRY,
@@ -0,0 +1,96 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import com.mojang.logging.LogUtils;
+import mimickal.minecraft.waterworks.Config;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
+import net.minecraftforge.registries.ForgeRegistries;
+import org.slf4j.Logger;
+
+import java.util.BitSet;
+
+/**
+ * {@link Config#accumulationBlacklist}, compiled into a set of block registry IDs.
+ * <p>
+ * Entries are either block names ({@code minecraft:lava}) or block tags ({@code #minecraft:crops}).
+ * Reading names and expanding tags is slow, so we only do it when the config or tags change,
+ * and checking a block is then just a bit lookup.
+ */
+public class AccumulationBlacklist {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    public static final String TAG_PREFIX = "#";
+
+    /**
+     * Registry IDs of every blacklisted block.
+     * Config reloads happen on another thread, so this is swapped out whole rather than modified.
+     */
+    private static volatile BitSet BLOCK_IDS = new BitSet();
+
+    /** Whether the given block is on the blacklist. */
+    public static boolean contains(BlockState state) {
+        return BLOCK_IDS.get(Registry.BLOCK.getId(state.getBlock()));
+    }
+
+    /**
+     * Whether the given string is something the blacklist understands.
+     * Tags might not exist until datapacks load, so those only need to look like a tag.
+     */
+    public static boolean isValidEntry(Object entry) {
+        if (!(entry instanceof String name)) return false;
+        if (name.startsWith(TAG_PREFIX)) {
+            return ResourceLocation.isValidResourceLocation(name.substring(TAG_PREFIX.length()));
+        }
+        return ResourceLocation.isValidResourceLocation(name) && ForgeRegistries.BLOCKS.containsKey(new ResourceLocation(name));
+    }
+
+    /** Rebuilds the blacklist when our config is loaded or changed. Lives on the mod event bus. */
+    public static void onConfigChange(ModConfigEvent event) {
+        if (event.getConfig().getSpec() != Config.CONFIG_SPEC) return;
+        compile();
+    }
+
+    /** Rebuilds the blacklist when tags are (re)loaded, since that can change which blocks a tag has. */
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        compile();
+    }
+
+    private static void compile() {
+        BitSet blockIds = new BitSet();
+
+        for (String entry : Config.accumulationBlacklist.get()) {
+            if (!isValidEntry(entry)) {
+                LOGGER.warn("Ignoring invalid accumulation blacklist entry {}", entry);
+                continue;
+            }
+
+            if (entry.startsWith(TAG_PREFIX)) {
+                TagKey<Block> tag = TagKey.create(
+                    Registry.BLOCK_REGISTRY, new ResourceLocation(entry.substring(TAG_PREFIX.length()))
+                );
+                for (Holder<Block> block : Registry.BLOCK.getTagOrEmpty(tag)) {
+                    blockIds.set(Registry.BLOCK.getId(block.value()));
+                }
+            } else {
+                blockIds.set(Registry.BLOCK.getId(ForgeRegistries.BLOCKS.getValue(new ResourceLocation(entry))));
+            }
+        }
+
+        LOGGER.debug("Compiled accumulation blacklist ({} blocks)", blockIds.cardinality());
+        BLOCK_IDS = blockIds;
+    }
+}
@@ -8,28 +8,51 @@
 package mimickal.minecraft.waterworks.eva;
 
 import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMaps;
 import mimickal.minecraft.util.ChunkUtil;
 import mimickal.minecraft.waterworks.Config;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.ModBlocks;
+import mimickal.minecraft.waterworks.Waterworks;
+import mimickal.minecraft.waterworks.eva.climate.ClimateCache;
+import mimickal.minecraft.waterworks.eva.storage.ChunkAttachedStore;
+import mimickal.minecraft.waterworks.eva.storage.ChunkValueMap;
+import mimickal.minecraft.waterworks.eva.storage.EvaStore;
+import mimickal.minecraft.waterworks.eva.storage.MappedStore;
+import mimickal.minecraft.waterworks.eva.storage.RegionStorage;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.saveddata.SavedData;
 import net.minecraft.world.level.storage.DimensionDataStorage;
+import net.minecraft.world.level.storage.LevelResource;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.function.LongToIntFunction;
+import java.util.function.Predicate;
 
 /** Controls modification, serialization, and deserialization of data for the mod. */
 public class EvaData extends SavedData {
     private static final Logger LOGGER = LogUtils.getLogger();
     private static final String SAVE_NAME = "eva";
-    private static final String HUMIDITY_TAG_NAME = "humidity";
-    private static final String STATUE_TAG_NAME = "statue";
+    private static final String MAPPED_FOLDER_NAME = "eva_mapped";
+    private static final String VERSION_TAG_NAME = "version";
+    private static final String LEGACY_HUMIDITY_TAG_NAME = "humidity";
+    private static final String LEGACY_STATUE_TAG_NAME = "statue";
+    private static final Predicate<BlockState> IS_STATUE = state -> state.is(ModBlocks.STATUE.get());
+
+    /** Save format versions. Data saved before versioning existed reads as 0. */
+    private static final int FORMAT_REGIONS = 1;
 
     /**
      * Gets the data manager for the given level, creating it if it doesn't exist yet.
@@ -54,119 +77,247 @@ public class EvaData extends SavedData {
         );
     }
 
-    // TODO This could get prohibitively large if a world gets big enough.
-    /** A measure of water currently "evaporated" per-chunk. */
-    private final ChunkValueMap humidity;
-    /** A count of leviathan statues places per-chunk. This cache avoids needing to search the whole chunk. */
-    private final ChunkValueMap statues;
+    /** Where humidity and statue data actually lives. See {@link Config#storageMode}. */
+    private final EvaStore store;
     /** The level (aka dimension) this data exists in. */
     private final ServerLevel level;
+    /** Pre-region data we couldn't migrate into the current store. Written back out as-is so it isn't lost. */
+    @Nullable
+    private CompoundTag legacyData = null;
+    /** {@link #calcInitialHumidity} as a function, so passing it to the store doesn't allocate. */
+    private final LongToIntFunction initialHumidity = this::calcInitialHumidity;
+    /** Running totals for loaded chunks. See {@link #getLoadedHumidity()}. */
+    private final LoadedHumidity loadedHumidity = new LoadedHumidity();
+    /**
+     * The config {@link #loadedHumidity} was totaled with. Chunks without stored humidity depend on it.
+     * Default humidity is always worked out from this, never straight from the config, so the totals can't
+     * be counted with one config and recorded with another while a reload is landing.
+     */
+    private HumidityDefaults loadedDefaults = HumidityDefaults.of(ConfigSnapshot.get());
 
     /** This constructor is called when loading the first time (i.e. no data on disk). */
     private EvaData(ServerLevel level) {
         this.level = level;
-        humidity = new ChunkValueMap();
-        statues = new ChunkValueMap();
+        this.store = switch (Config.storageMode.get()) {
+            case REGION -> new RegionStorage(
+                storageFolder(level, SAVE_NAME), Config.storageMaxLoadedRegions.get(), Config.storageJournal.get()
+            );
+            case CHUNK -> new ChunkAttachedStore(level);
+            case MAPPED -> new MappedStore(storageFolder(level, MAPPED_FOLDER_NAME), Config.storageMaxLoadedRegions.get());
+        };
     }
 
     /**
      * This constructor is called when deserializing from disk.
+     * <p>
+     * The actual data is read lazily by the store, so there's usually nothing to do here.
+     * The exception is data from before regions existed, which was all stored in this one tag.
      * @param topLevelTag the incoming serialized data from disk.
      */
     private EvaData(ServerLevel level, CompoundTag topLevelTag) {
-        this.level = level;
-        this.humidity = deserializeToMap(topLevelTag.getList(HUMIDITY_TAG_NAME, Tag.TAG_COMPOUND));
-        this.statues = deserializeToMap(topLevelTag.getList(STATUE_TAG_NAME, Tag.TAG_COMPOUND));
-        LOGGER.debug("Loaded humidity data ({} chunks)", this.humidity.size());
-        LOGGER.debug("Loaded statue data ({} chunks)", this.statues.size());
+        this(level);
+        if (topLevelTag.getInt(VERSION_TAG_NAME) < FORMAT_REGIONS) {
+            migrateLegacyData(topLevelTag);
+        }
     }
 
     /**
      * Serializes the data out to disk.
+     * <p>
+     * The actual data lives in the store, which only writes what changed since the last save.
      * @param topLevelTag A defined but empty tag to write the data into.
      * @return The populated tag.
      */
     @NotNull
     @Override
     public CompoundTag save(CompoundTag topLevelTag) {
-        ListTag humidityList = serializeToTag(this.humidity);
-        ListTag statueList = serializeToTag(this.statues);
-        topLevelTag.put(HUMIDITY_TAG_NAME, humidityList);
-        topLevelTag.put(STATUE_TAG_NAME, statueList);
-        LOGGER.debug("Saving humidity data ({} chunks)", humidityList.size());
-        LOGGER.debug("Saving statue data ({} chunks)", statueList.size());
+        this.store.save();
+
+        if (this.legacyData != null) {
+            topLevelTag.merge(this.legacyData);
+        } else {
+            topLevelTag.putInt(VERSION_TAG_NAME, FORMAT_REGIONS);
+        }
         return topLevelTag;
     }
 
+    /**
+     * Moves data from the old single-file format into the store.
+     * The store saves it from there, and the next save of this tag drops the old lists.
+     * <p>
+     * Chunk-attached storage can only write to loaded chunks, so in that mode we hold onto the old data instead.
+     */
+    private void migrateLegacyData(CompoundTag topLevelTag) {
+        if (this.store instanceof ChunkAttachedStore) {
+            LOGGER.warn("Not migrating old EVA data for {} while using {} storage",
+                this.level.dimension().location(), Config.storageMode.get()
+            );
+            this.legacyData = topLevelTag;
+            return;
+        }
+
+        ChunkValueMap legacyHumidity = new ChunkValueMap(ChunkValueMap.MISSING);
+        ChunkValueMap legacyStatues = new ChunkValueMap(0);
+        legacyHumidity.deserializeLegacy(topLevelTag.getList(LEGACY_HUMIDITY_TAG_NAME, Tag.TAG_COMPOUND));
+        legacyStatues.deserializeLegacy(topLevelTag.getList(LEGACY_STATUE_TAG_NAME, Tag.TAG_COMPOUND));
+
+        for (Long2IntMap.Entry entry : Long2IntMaps.fastIterable(legacyHumidity)) {
+            this.store.setHumidity(entry.getLongKey(), entry.getIntValue());
+        }
+        for (Long2IntMap.Entry entry : Long2IntMaps.fastIterable(legacyStatues)) {
+            this.store.setStatueCount(entry.getLongKey(), entry.getIntValue());
+        }
+
+        LOGGER.info("Migrating {} humidity and {} statue entries for {} to {} storage",
+            legacyHumidity.size(), legacyStatues.size(), this.level.dimension().location(), Config.storageMode.get()
+        );
+        this.setDirty();
+    }
+
+    /** Returns the folder a store keeps this level's files in. */
+    private static Path storageFolder(ServerLevel level, String name) {
+        Path levelFolder = DimensionType.getStorageFolder(
+            level.dimension(), level.getServer().getWorldPath(LevelResource.ROOT)
+        );
+        return levelFolder.resolve("data").resolve(Waterworks.MOD_NAME).resolve(name);
+    }
+
     /* Humidity functions */
 
     /**
      * Gets the amount of evaporated water stored for the given chunk.
+     * <p>
+     * Only chunks whose humidity differs from their default are actually stored.
+     * Reading a chunk that isn't stored just calculates its default without storing it.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
      * @return Amount in milli-buckets.
      */
-    @NotNull
-    public Integer getHumidity(ChunkPos pos) {
-        this.humidity.computeIfAbsent(pos, this::calcInitialHumidity);
-        return this.humidity.get(pos);
+    public int getHumidity(long chunkPos) {
+        int amount = this.store.getHumidity(chunkPos);
+        return amount != ChunkValueMap.MISSING ? amount : calcInitialHumidity(chunkPos);
+    }
+
+    /**
+     * Bulk version of {@link #getHumidity(long)}, for reading lots of chunks at once.
+     * Like the single version, this doesn't store anything.
+     * @param chunkPositions Packed {@link ChunkPos#toLong()} values.
+     * @param amounts Filled with each chunk's humidity, in milli-buckets. Must be at least as long as the positions.
+     */
+    public void getHumidity(long[] chunkPositions, int[] amounts) {
+        this.store.getHumidity(chunkPositions, amounts);
+        for (int i = 0; i < chunkPositions.length; i++) {
+            if (amounts[i] == ChunkValueMap.MISSING) {
+                amounts[i] = calcInitialHumidity(chunkPositions[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets the amount of evaporated water stored for the given chunk.
+     * @return Amount in milli-buckets.
+     */
+    public int getHumidity(ChunkPos pos) {
+        return getHumidity(pos.toLong());
     }
 
     /**
      * Gets the amount of evaporated water stored for the chunk the given block pos resides in.
      * @return Amount in milli-buckets.
      */
-    @NotNull
-    public Integer getHumidity(BlockPos pos) {
-        return getHumidity(new ChunkPos(pos));
+    public int getHumidity(BlockPos pos) {
+        return getHumidity(ChunkPos.asLong(pos));
     }
 
     /**
      * Changes the amount of evaporated water stored for the given chunk.
+     * <p>
+     * This happens constantly, so it's a single merge into the store. We don't check whether the chunk went back
+     * to its default here. That gets cleaned up when the chunk unloads (see {@link #onChunkUnload}).
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
      * @param amountChanged amount in milli-buckets.
      */
-    public void changeHumidity(ChunkPos pos, Integer amountChanged) {
-        LOGGER.debug("Humidity change {} at chunk {}", amountChanged, pos);
-        this.humidity.computeIfAbsent(pos, this::calcInitialHumidity);
-        this.humidity.put(pos, this.humidity.get(pos) + amountChanged);
+    public void changeHumidity(long chunkPos, int amountChanged) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Humidity change {} at chunk {}", amountChanged, new ChunkPos(chunkPos));
+        }
+        // If the store couldn't keep the change, the totals shouldn't count it either.
+        if (this.store.changeHumidity(chunkPos, amountChanged, this.initialHumidity) == ChunkValueMap.MISSING) return;
+
+        this.loadedHumidity.changeHumidity(chunkPos, amountChanged);
         this.setDirty();
     }
 
+    /**
+     * Changes the amount of evaporated water stored for the given chunk.
+     * @param amountChanged amount in milli-buckets.
+     */
+    public void changeHumidity(ChunkPos pos, int amountChanged) {
+        changeHumidity(pos.toLong(), amountChanged);
+    }
+
     /**
      * Changes the amount of evaporated water stored for the chunk the given block pos resides in.
      * @param amountChanged amount in milli-buckets.
      */
-    public void changeHumidity(BlockPos pos, Integer amountChanged) {
-        changeHumidity(new ChunkPos(pos), amountChanged);
+    public void changeHumidity(BlockPos pos, int amountChanged) {
+        changeHumidity(ChunkPos.asLong(pos), amountChanged);
     }
 
     /**
      * <b>Sets</b> the amount of evaporated water stored for the given chunk.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
      * @param amount amount in milli-buckets.
      */
-    public void setHumidity(ChunkPos pos, Integer amount) {
-        LOGGER.debug("Humidity set {} at chunk {}", amount, pos);
-        this.humidity.put(pos, amount);
-        this.setDirty();
+    public void setHumidity(long chunkPos, int amount) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Humidity set {} at chunk {}", amount, new ChunkPos(chunkPos));
+        }
+        if (this.loadedHumidity.contains(chunkPos)) {
+            this.loadedHumidity.changeHumidity(chunkPos, amount - getHumidity(chunkPos));
+        }
+        storeHumidity(chunkPos, amount, calcInitialHumidity(chunkPos));
+    }
+
+    /**
+     * <b>Sets</b> the amount of evaporated water stored for the given chunk.
+     * @param amount amount in milli-buckets.
+     */
+    public void setHumidity(ChunkPos pos, int amount) {
+        setHumidity(pos.toLong(), amount);
     }
 
     /**
      * <b>Sets</b> the amount of evaporated water stored for the chunk the given block pos resides in.
      * @param amount amount in milli-buckets.
      */
-    public void setHumidity(BlockPos pos, Integer amount) {
-        setHumidity(new ChunkPos(pos), amount);
+    public void setHumidity(BlockPos pos, int amount) {
+        setHumidity(ChunkPos.asLong(pos), amount);
     }
 
-    /** <b>Resets</b> the amount of evaporated water stored for the given chunk. */
-    public void resetHumidity(ChunkPos pos) {
+    /**
+     * <b>Resets</b> the amount of evaporated water stored for the given chunk.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    public void resetHumidity(long chunkPos) {
         // This will regenerate using the default value next time we try to do something with this chunk.
-        LOGGER.debug("Humidity unset at chunk {}", pos);
-        this.humidity.remove(pos);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Humidity unset at chunk {}", new ChunkPos(chunkPos));
+        }
+        if (this.loadedHumidity.contains(chunkPos)) {
+            this.loadedHumidity.changeHumidity(chunkPos, calcInitialHumidity(chunkPos) - getHumidity(chunkPos));
+        }
+        this.store.removeHumidity(chunkPos);
         this.setDirty();
     }
 
+    /** <b>Resets</b> the amount of evaporated water stored for the given chunk. */
+    public void resetHumidity(ChunkPos pos) {
+        resetHumidity(pos.toLong());
+    }
+
     /** <b>Resets</b> the amount of evaporated water stored for the chunk the given block pos resides in. */
     public void resetHumidity(BlockPos pos) {
-        resetHumidity(new ChunkPos(pos));
+        resetHumidity(ChunkPos.asLong(pos));
     }
 
     /** <b>COMPLETELY DELETES</b> the map of evaporated water stored for this level (NOTE: <i>level</i>, not world). */
@@ -174,116 +325,239 @@ public class EvaData extends SavedData {
         // Like with reset, every chunk's default value will be regenerated next time they're accessed.
         if (!seriously) return;
         LOGGER.debug("CLEARING humidity map for {}", this.level.dimension().location());
-        this.humidity.clear();
+        this.store.clearHumidity();
+        recountLoadedHumidity();
         this.setDirty();
     }
 
-    /**
-     * Calculates the initial humidity for the given chunk.
-     * <p>
-     * A chunk can span more than one biome. When {@link Config#chunkVanillaHumidity} is enabled, we just pick
-     * a random block in the chunk and use that block's biome's downfall value for the calculation.
-     */
-    private Integer calcInitialHumidity(ChunkPos pos) {
-        BlockPos blockPos = ChunkUtil.getRandomPosInChunk(this.level, pos);
-        return calcInitialHumidity(blockPos);
+    /** Stores a chunk's humidity, or drops it from storage if it's just the chunk's default. */
+    private void storeHumidity(long chunkPos, int amount, int initialAmount) {
+        if (amount == initialAmount) {
+            this.store.removeHumidity(chunkPos);
+        } else {
+            this.store.setHumidity(chunkPos, amount);
+        }
+        this.setDirty();
     }
 
     /**
-     * Calculates the initial humidity for the chunk the given block pos resides in.
+     * Calculates the initial humidity for the given chunk.
      * <p>
      * Initial humidity is a percentage of the configured "100% will rain" threshold,
      * optionally scaled by the {@link net.minecraft.world.level.biome.Biome#getDownfall()}
-     * value of the biome this block lives in.
+     * value of the chunk's biome.
      * <p>
      * This allows biomes that should intuitively be humid to generate humid (e.g. the ocean).
      * This avoids a large delay before the first rainstorm in a new world, whereas starting at 0 humidity would
      * require a lot of evaporation to happen before rain would happen.
+     * <p>
+     * A chunk can span more than one biome. Since we don't store defaults, this needs to give the same answer
+     * every time, so we use the biome at the center of the chunk (at sea level). See {@link ClimateCache#centerDownfall}.
      */
-    private Integer calcInitialHumidity(BlockPos pos) {
-        int humidity = (int)(
-            Config.chunkDefaultHumidityPercent.get() / 100 *
-            Config.rainChunkHumidityThreshold.get() *
-            (Config.chunkVanillaHumidity.get()
-                ? this.level.getBiome(pos).value().getDownfall()
-                : 1
-            )
-        );
+    private int calcInitialHumidity(long chunkPos) {
+        HumidityDefaults defaults = this.loadedDefaults;
+        if (!defaults.vanilla()) {
+            return (int)defaults.amount();
+        }
 
-        LOGGER.debug("Initializing {} with {}", new ChunkPos(pos), humidity);
-        return humidity;
+        return (int)(defaults.amount() * ClimateCache.get(this.level).centerDownfall(chunkPos));
     }
 
     /* Statue functions */
 
+    /**
+     * Gets the number of statues in the given chunk.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    public int getStatueCount(long chunkPos) {
+        return this.store.getStatueCount(chunkPos);
+    }
+
+    /**
+     * Bulk version of {@link #getStatueCount(long)}, for reading lots of chunks at once.
+     * @param chunkPositions Packed {@link ChunkPos#toLong()} values.
+     * @param counts Filled with each chunk's statue count. Must be at least as long as the positions.
+     */
+    public void getStatueCount(long[] chunkPositions, int[] counts) {
+        this.store.getStatueCount(chunkPositions, counts);
+    }
+
     /** Gets the number of statues in the given chunk. */
-    @NotNull
-    public Integer getStatueCount(ChunkPos pos) {
-        return this.statues.getOrDefault(pos, 0);
+    public int getStatueCount(ChunkPos pos) {
+        return getStatueCount(pos.toLong());
     }
 
     /** Gets the number of statues in the chunk the given block pos resides in. */
-    @NotNull
-    public Integer getStatueCount(BlockPos pos) {
-        return getStatueCount(new ChunkPos(pos));
+    public int getStatueCount(BlockPos pos) {
+        return getStatueCount(ChunkPos.asLong(pos));
     }
 
-    /** Changes the number of statues stored for the given chunk. Deletes the entry if resulting value is 0. */
-    public void changeStatueCount(ChunkPos pos, Integer amountChanged) {
-        LOGGER.debug("Statue count change {} at chunk {}", amountChanged, pos);
-        this.statues.put(pos, this.statues.getOrDefault(pos, 0) + amountChanged);
-
-        // To save space, delete entries for chunks with no statues (i.e. most of them).
-        if (this.statues.get(pos) == 0) {
-            this.statues.remove(pos);
+    /**
+     * Changes the number of statues stored for the given chunk. Deletes the entry if resulting value is 0.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    public void changeStatueCount(long chunkPos, int amountChanged) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Statue count change {} at chunk {}", amountChanged, new ChunkPos(chunkPos));
         }
 
+        // Stores delete entries for chunks with no statues (i.e. most of them) to save space.
+        int before = this.store.getStatueCount(chunkPos);
+        this.store.setStatueCount(chunkPos, before + amountChanged);
+        this.loadedHumidity.changeStatueCount(chunkPos, before, before + amountChanged);
         this.setDirty();
     }
 
+    /** Changes the number of statues stored for the given chunk. Deletes the entry if resulting value is 0. */
+    public void changeStatueCount(ChunkPos pos, int amountChanged) {
+        changeStatueCount(pos.toLong(), amountChanged);
+    }
+
     /** Changes the number of statues stored for the chunk the given block pos resides in. */
-    public void changeStatueCount(BlockPos pos, Integer amountChanged) {
-        changeStatueCount(new ChunkPos(pos), amountChanged);
+    public void changeStatueCount(BlockPos pos, int amountChanged) {
+        changeStatueCount(ChunkPos.asLong(pos), amountChanged);
+    }
+
+    /* Loaded chunk totals */
+
+    /**
+     * Gets the running humidity totals for every loaded chunk in this level.
+     * <p>
+     * These are kept up to date as humidity changes, so reading them is cheap no matter how many chunks are loaded.
+     * If the config that decides default humidity changes, they're recounted at the start of the next tick.
+     */
+    public LoadedHumidity getLoadedHumidity() {
+        return this.loadedHumidity;
+    }
+
+    /**
+     * Picks up a change to the default humidity config, and recounts the loaded totals with it.
+     * The new defaults are read from the tick's {@link ConfigSnapshot}, and recorded before recounting,
+     * so the recount uses exactly the defaults we remember it using.
+     */
+    private void refreshDefaults(ConfigSnapshot config) {
+        HumidityDefaults defaults = HumidityDefaults.of(config);
+        if (defaults.equals(this.loadedDefaults)) return;
+
+        LOGGER.debug("Default humidity config changed. Recounting loaded humidity for {}",
+            this.level.dimension().location()
+        );
+        this.loadedDefaults = defaults;
+        recountLoadedHumidity();
+    }
+
+    /**
+     * Checks the running totals against a full count of the given chunks, and replaces them if they disagree.
+     * This is a debugging aid (see {@link Config#rainDebugAggregate}). Nothing should need it to stay correct.
+     * @param loadedChunks Packed {@link ChunkPos#toLong()} values of every loaded chunk in the level.
+     * @return Whether the totals were correct.
+     */
+    public boolean verifyLoadedHumidity(long[] loadedChunks) {
+        LoadedHumidity counted = countHumidity(loadedChunks);
+        if (counted.matches(getLoadedHumidity())) return true;
+
+        LOGGER.warn("Loaded humidity totals for {} drifted (tracked: {}, counted: {}). Resyncing.",
+            this.level.dimension().location(), this.loadedHumidity, counted
+        );
+        this.loadedHumidity.clear();
+        countHumidity(loadedChunks, this.loadedHumidity);
+        return false;
+    }
+
+    /** Recounts the totals for the chunks we already think are loaded. */
+    private void recountLoadedHumidity() {
+        long[] chunks = this.loadedHumidity.chunks();
+        this.loadedHumidity.clear();
+        countHumidity(chunks, this.loadedHumidity);
+    }
+
+    private LoadedHumidity countHumidity(long[] chunkPositions) {
+        LoadedHumidity totals = new LoadedHumidity();
+        countHumidity(chunkPositions, totals);
+        return totals;
+    }
+
+    private void countHumidity(long[] chunkPositions, LoadedHumidity totals) {
+        int[] humidity = new int[chunkPositions.length];
+        int[] statues = new int[chunkPositions.length];
+        getHumidity(chunkPositions, humidity);
+        getStatueCount(chunkPositions, statues);
+
+        for (int i = 0; i < chunkPositions.length; i++) {
+            totals.add(chunkPositions[i], humidity[i], statues[i]);
+        }
     }
 
-    /* Helpers */
+    /** The config values that decide a chunk's default humidity. */
+    private record HumidityDefaults(boolean vanilla, double amount) {
+        static HumidityDefaults of(ConfigSnapshot config) {
+            return new HumidityDefaults(config.chunkVanillaHumidity(), config.chunkDefaultHumidity());
+        }
+    }
 
-    /** Specialization of a {@link HashMap} that maps numerical values by chunk. */
-    private static class ChunkValueMap extends HashMap<ChunkPos, Integer> { }
+    /* Lifecycle */
 
-    private static ChunkValueMap deserializeToMap(ListTag listTag) {
-        return listTag
-            .stream()
-            .map(tag -> (CompoundTag) tag)
-            .collect(ChunkValueMap::new, ChunkAmountTag::toMap, ChunkValueMap::putAll);
+    /** Called once per level tick, with the config that tick runs with. */
+    public void tick(ConfigSnapshot config) {
+        refreshDefaults(config);
+        this.store.tick();
     }
 
-    private static ListTag serializeToTag(ChunkValueMap map) {
-        return map.entrySet()
-            .stream()
-            .map(ChunkAmountTag::new)
-            .collect(ListTag::new, ListTag::add, ListTag::addAll);
+    /** Called when this data's level is unloaded. Blocks until everything has been written to disk. */
+    public void close() {
+        this.store.close();
     }
 
-    /** Helper for serializing and deserializing integer data for a chunk. */
-    private static class ChunkAmountTag extends CompoundTag {
-        private static final String X = "x";
-        private static final String Z = "z";
-        private static final String AMOUNT = "amt";
+    /** Called when a chunk's saved data is read from disk. */
+    public void onChunkLoad(ChunkAccess chunk, CompoundTag chunkTag) {
+        this.store.onChunkLoad(chunk.getPos().toLong(), chunkTag);
+    }
 
-        /** Serializes a single entry from a chunk map to a {@link CompoundTag}. */
-        private ChunkAmountTag(Map.Entry<ChunkPos, Integer> entry) {
-            this.putInt(X, entry.getKey().x);
-            this.putInt(Z, entry.getKey().z);
-            this.putInt(AMOUNT, entry.getValue());
+    /**
+     * Called once a chunk is fully loaded and part of the level.
+     * Its data has already been read by {@link #onChunkLoad} by now.
+     * <p>
+     * Statues can come and go without us seeing an event (commands, other mods, editing the world offline),
+     * so we recount them here. Most sections can't have a statue in their palette, so this is cheap.
+     */
+    public void onFullChunkLoad(LevelChunk chunk) {
+        long chunkPos = chunk.getPos().toLong();
+
+        int statues = ChunkUtil.countBlocks(chunk, IS_STATUE);
+        if (statues != this.store.getStatueCount(chunkPos)) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Statue count for chunk {} corrected to {}", chunk.getPos(), statues);
+            }
+            this.store.setStatueCount(chunkPos, statues);
+            this.setDirty();
         }
 
-        /** Deserializes a {@link CompoundTag} into the given Map, which eventually becomes a chunk map. */
-        private static void toMap(Map<ChunkPos, Integer> map, CompoundTag tag) {
-            map.put(new ChunkPos(
-                tag.getInt(X),
-                tag.getInt(Z)
-            ),  tag.getInt(AMOUNT));
+        this.loadedHumidity.add(chunkPos, getHumidity(chunkPos), statues);
+    }
+
+    /** Called when a chunk's data is being written to disk. */
+    public void onChunkSave(ChunkAccess chunk, CompoundTag chunkTag) {
+        this.store.onChunkSave(chunk.getPos().toLong(), chunkTag);
+    }
+
+    /**
+     * Called when a chunk is unloaded.
+     * <p>
+     * This is also where we evict humidity that has drifted back to its default (e.g. after a config change,
+     * or from data saved before defaults stopped being stored), since nothing is going to read it for a while.
+     */
+    public void onChunkUnload(ChunkAccess chunk) {
+        long chunkPos = chunk.getPos().toLong();
+        if (this.loadedHumidity.contains(chunkPos)) {
+            this.loadedHumidity.remove(chunkPos, getHumidity(chunkPos), getStatueCount(chunkPos));
+        }
+
+        int stored = this.store.getHumidity(chunkPos);
+        if (stored != ChunkValueMap.MISSING && stored == calcInitialHumidity(chunkPos)) {
+            this.store.removeHumidity(chunkPos);
+            this.setDirty();
         }
+
+        this.store.onChunkUnload(chunk);
     }
 }
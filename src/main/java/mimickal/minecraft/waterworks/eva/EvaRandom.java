@@ -0,0 +1,84 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import mimickal.minecraft.waterworks.Config;
+import net.minecraft.server.level.ServerLevel;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Random number streams for EVA, one per level and per {@link Stream}.
+ * <p>
+ * Each stream is seeded from the world seed (or {@link Config#randomSeed}), the level, and the stream itself.
+ * That means the same world with the same config rolls the same dice in the same order, which makes
+ * it possible to compare runs. It also means subsystems don't share (and fight over) a single generator.
+ * <p>
+ * Streams aren't thread safe. They're meant to be used from the main server thread.
+ * Work done on other threads should take its own generator from {@link #split}.
+ */
+public class EvaRandom {
+    private final ServerLevel level;
+    private final Map<Stream, SplittableRandom> streams = new EnumMap<>(Stream.class);
+
+    /** The things that get their own stream of random numbers. */
+    public enum Stream {
+        ACCUMULATION,
+        BUCKET,
+        EVAPORATION,
+        RAIN,
+        // New streams go at the end, since each stream's seed comes from its ordinal.
+        COLLECTOR,
+    }
+
+    /** Gets the given random stream for the given level. Streams live in the level's {@link WeatherContext}. */
+    public static RandomGenerator get(ServerLevel level, Stream stream) {
+        return WeatherContext.get(level).random().get(stream);
+    }
+
+    /** Splits a generator off of the given random stream for the given level. See {@link #split(Stream)}. */
+    public static RandomGenerator split(ServerLevel level, Stream stream) {
+        return WeatherContext.get(level).random().split(stream);
+    }
+
+    EvaRandom(ServerLevel level) {
+        this.level = level;
+    }
+
+    /** Gets the given random stream, creating it if it doesn't exist yet. */
+    public RandomGenerator get(Stream stream) {
+        return stream(stream);
+    }
+
+    /**
+     * Splits a new, independent generator off of the given random stream.
+     * The new generator can be handed to another thread. Splitting advances the stream,
+     * so runs stay repeatable as long as splits happen in the same order.
+     */
+    public RandomGenerator split(Stream stream) {
+        return stream(stream).split();
+    }
+
+    private SplittableRandom stream(Stream stream) {
+        return this.streams.computeIfAbsent(stream, key -> new SplittableRandom(seed(this.level, stream)));
+    }
+
+    /**
+     * Mixes the base seed with the level and stream.
+     * {@link SplittableRandom} scrambles its seed, so streams with nearby seeds still aren't correlated.
+     */
+    private static long seed(ServerLevel level, Stream stream) {
+        long base = Config.randomSeed.get() != 0 ? Config.randomSeed.get() : level.getSeed();
+        // String hash codes are the same on every run, unlike ResourceKey's.
+        long levelHash = level.dimension().location().toString().hashCode();
+        return base ^ (levelHash << 32) ^ (stream.ordinal() * 0x9E3779B97F4A7C15L);
+    }
+}
@@ -0,0 +1,32 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * The one pool of worker threads EVA does its background work on (diffusion steps and accumulation/evaporation
+ * planning). Sharing a pool keeps the total number of threads we take away from the server in one place,
+ * instead of each system bringing its own and fighting over the same cores.
+ * <p>
+ * Threads are daemons, so a stuck task never keeps the server from shutting down.
+ */
+public class EvaWorkers {
+    public static final ForkJoinPool POOL = new ForkJoinPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+        pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Waterworks worker " + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        },
+        null,
+        false
+    );
+}
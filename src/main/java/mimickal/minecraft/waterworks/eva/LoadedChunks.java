@@ -0,0 +1,130 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import mimickal.minecraft.util.Chance;
+import mimickal.minecraft.util.TimeWheel;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+
+/**
+ * Every fully loaded chunk in a level, in a list we can index into.
+ * <p>
+ * Vanilla only lets us walk over every chunk it has loaded. That's fine when we need every chunk,
+ * but our handlers usually only want a small random handful of them.
+ * Keeping our own indexable list lets us jump straight to the ones we picked.
+ * <p>
+ * Chunks are also spread out over a {@link TimeWheel} for each {@link Schedule},
+ * so handlers can visit a small, steady slice of them each tick (see {@link #sampleScheduled}).
+ * <p>
+ * Chunks are added and removed as they load and unload
+ * (see {@link mimickal.minecraft.waterworks.eva.events.Lifecycle}).
+ */
+public class LoadedChunks {
+    private static final int MAX_TICK_DELAY = 5 * 20; // Roughly 5 seconds
+
+    /** Handlers that visit chunks on their own {@link TimeWheel}. */
+    public enum Schedule {
+        ACCUMULATION,
+        EVAPORATION,
+    }
+
+    private final ServerLevel level;
+    private final List<LevelChunk> chunks = new ArrayList<>();
+    /** Index of each chunk in {@link #chunks}, keyed by packed {@link ChunkPos#toLong()}. */
+    private final Long2IntOpenHashMap indices = new Long2IntOpenHashMap();
+    private final Map<Schedule, TimeWheel<LevelChunk>> wheels = new EnumMap<>(Schedule.class);
+
+    /** Gets the loaded chunks for the given level. They live in the level's {@link WeatherContext}. */
+    public static LoadedChunks get(ServerLevel level) {
+        return WeatherContext.get(level).loadedChunks();
+    }
+
+    LoadedChunks(ServerLevel level) {
+        this.level = level;
+        this.indices.defaultReturnValue(-1);
+    }
+
+    public void onChunkLoad(LevelChunk chunk) {
+        long chunkPos = chunk.getPos().toLong();
+        this.wheels.values().forEach(wheel -> wheel.add(chunkPos, chunk));
+
+        int index = this.indices.get(chunkPos);
+        if (index >= 0) {
+            this.chunks.set(index, chunk);
+            return;
+        }
+
+        this.indices.put(chunkPos, this.chunks.size());
+        this.chunks.add(chunk);
+    }
+
+    /** Whether the given chunk is (still) loaded. */
+    public boolean contains(LevelChunk chunk) {
+        int index = this.indices.get(chunk.getPos().toLong());
+        return index >= 0 && this.chunks.get(index) == chunk;
+    }
+
+    /** Removes a chunk by moving the last chunk into its slot, so this doesn't shift the whole list. */
+    public void onChunkUnload(long chunkPos) {
+        this.wheels.values().forEach(wheel -> wheel.remove(chunkPos));
+
+        int index = this.indices.remove(chunkPos);
+        if (index < 0) return;
+
+        LevelChunk last = this.chunks.remove(this.chunks.size() - 1);
+        if (index < this.chunks.size()) {
+            this.chunks.set(index, last);
+            this.indices.put(last.getPos().toLong(), index);
+        }
+    }
+
+    public int size() {
+        return this.chunks.size();
+    }
+
+    /**
+     * Number of {@link TimeWheel} slots for a smoothness percentage, which is also how many ticks a full lap takes.
+     * This matches how often handlers used to run all at once: every tick at 100% smoothness,
+     * and about every 5 seconds at 0%.
+     */
+    public static int wheelSlots(double smoothness) {
+        return (int)((100 - smoothness) / 100 * MAX_TICK_DELAY) + 1;
+    }
+
+    /**
+     * Moves the given schedule's wheel on by a slot, and picks each ticking chunk in the slot we just left with the
+     * given percent chance. This is the same as rolling {@link Chance#percent} once per chunk, except it only costs
+     * time for the chunks that actually get picked. See {@link Chance#sampleIndices}.
+     * <p>
+     * Call this every tick, even when nothing will be done with the chunks, so every slot gets its turn.
+     * @param slots Number of slots the wheel should have. See {@link #wheelSlots}.
+     */
+    public Stream<LevelChunk> sampleScheduled(Schedule schedule, int slots, RandomGenerator random, double chance) {
+        TimeWheel<LevelChunk> wheel = this.wheels.computeIfAbsent(schedule, key -> {
+            TimeWheel<LevelChunk> newWheel = new TimeWheel<>(slots);
+            this.chunks.forEach(chunk -> newWheel.add(chunk.getPos().toLong(), chunk));
+            return newWheel;
+        });
+        wheel.resize(slots);
+
+        List<LevelChunk> slot = wheel.advance();
+        return Chance.sampleIndices(random, slot.size(), chance)
+            .mapToObj(slot::get)
+            .filter(chunk -> this.level.shouldTickBlocksAt(chunk.getPos().toLong()));
+    }
+}
@@ -0,0 +1,250 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A running total of humidity across every loaded chunk in a level.
+ * <p>
+ * {@link EvaData} keeps this up to date as humidity changes and chunks load and unload,
+ * so reading the average humidity of loaded chunks doesn't mean visiting every one of them.
+ * <p>
+ * Totals are also kept per weather cell (square groups of {@link #CELL_WIDTH} chunks),
+ * and per group of cells in a quadtree above that. Each layer up covers twice the width of the one below it.
+ * Updating a chunk touches one node per layer, and totaling any rectangle of cells only visits
+ * the nodes along its edges.
+ * <p>
+ * All chunk positions are packed {@link ChunkPos#toLong()} values.
+ * Cell positions are packed the same way, just in cell coordinates.
+ */
+public class LoadedHumidity {
+    /** log2 of {@link #CELL_WIDTH}. */
+    public static final int CELL_SHIFT = 4;
+    /** Number of chunks along one side of a weather cell. */
+    public static final int CELL_WIDTH = 1 << CELL_SHIFT;
+    /** Quadtree layers, counting the cells themselves. The top layer's nodes are 2048 chunks wide. */
+    private static final int LAYERS = 8;
+
+    private final LongSet chunks = new LongOpenHashSet();
+    private final Totals total = new Totals();
+    /** Nodes of each quadtree layer. Layer 0 is the cells themselves. Empty nodes are dropped. */
+    private final List<Long2ObjectOpenHashMap<Totals>> layers = new ArrayList<>(LAYERS);
+
+    public LoadedHumidity() {
+        for (int i = 0; i < LAYERS; i++) {
+            this.layers.add(new Long2ObjectOpenHashMap<>());
+        }
+    }
+
+    /** Gets the cell the given chunk is in. */
+    public static long cellKey(long chunkPos) {
+        return ChunkPos.asLong(ChunkPos.getX(chunkPos) >> CELL_SHIFT, ChunkPos.getZ(chunkPos) >> CELL_SHIFT);
+    }
+
+    /** Number of loaded chunks. */
+    public int size() {
+        return this.total.size();
+    }
+
+    /** Total humidity of all loaded chunks, in milli-buckets. */
+    public long humiditySum() {
+        return this.total.humiditySum();
+    }
+
+    /** Number of loaded chunks with at least one statue in them. */
+    public int statueChunks() {
+        return this.total.statueChunks();
+    }
+
+    /** Totals for every cell with at least one loaded chunk, keyed by cell. Don't modify this. */
+    public Long2ObjectMap<Totals> cells() {
+        return Long2ObjectMaps.unmodifiable(this.layers.get(0));
+    }
+
+    /** Totals for a single cell, or {@code null} if it has no loaded chunks. */
+    @Nullable
+    public Totals cell(long cellKey) {
+        return this.layers.get(0).get(cellKey);
+    }
+
+    /** Totals for every loaded chunk in the given (inclusive) rectangle of cells. */
+    public Totals cells(int minCellX, int minCellZ, int maxCellX, int maxCellZ) {
+        Totals totals = new Totals();
+        int top = LAYERS - 1;
+        for (int x = minCellX >> top; x <= maxCellX >> top; x++) {
+            for (int z = minCellZ >> top; z <= maxCellZ >> top; z++) {
+                collect(top, x, z, minCellX, minCellZ, maxCellX, maxCellZ, totals);
+            }
+        }
+        return totals;
+    }
+
+    /** Adds up the parts of a node (and its children) that fall inside the given rectangle of cells. */
+    private void collect(int layer, int x, int z, int minCellX, int minCellZ, int maxCellX, int maxCellZ, Totals out) {
+        Totals node = this.layers.get(layer).get(ChunkPos.asLong(x, z));
+        if (node == null) return;
+
+        int nodeMinX = x << layer;
+        int nodeMinZ = z << layer;
+        int nodeMaxX = nodeMinX + (1 << layer) - 1;
+        int nodeMaxZ = nodeMinZ + (1 << layer) - 1;
+        if (nodeMaxX < minCellX || nodeMinX > maxCellX || nodeMaxZ < minCellZ || nodeMinZ > maxCellZ) return;
+
+        if (minCellX <= nodeMinX && nodeMaxX <= maxCellX && minCellZ <= nodeMinZ && nodeMaxZ <= maxCellZ) {
+            out.add(node);
+            return;
+        }
+
+        // Only partly covered, so look at the quarters. Layer 0 nodes are always either in or out.
+        for (int childX = x << 1; childX <= (x << 1) + 1; childX++) {
+            for (int childZ = z << 1; childZ <= (z << 1) + 1; childZ++) {
+                collect(layer - 1, childX, childZ, minCellX, minCellZ, maxCellX, maxCellZ, out);
+            }
+        }
+    }
+
+    boolean contains(long chunkPos) {
+        return this.chunks.contains(chunkPos);
+    }
+
+    void add(long chunkPos, int humidity, int statues) {
+        if (!this.chunks.add(chunkPos)) return;
+        update(chunkPos, 1, humidity, statues > 0 ? 1 : 0);
+    }
+
+    void remove(long chunkPos, int humidity, int statues) {
+        if (!this.chunks.remove(chunkPos)) return;
+        update(chunkPos, -1, -humidity, statues > 0 ? -1 : 0);
+    }
+
+    /** Does nothing for chunks that aren't loaded. */
+    void changeHumidity(long chunkPos, int amountChanged) {
+        if (!contains(chunkPos)) return;
+        update(chunkPos, 0, amountChanged, 0);
+    }
+
+    /** Does nothing for chunks that aren't loaded. */
+    void changeStatueCount(long chunkPos, int before, int after) {
+        if (!contains(chunkPos)) return;
+        if (before <= 0 && after > 0) update(chunkPos, 0, 0, 1);
+        if (before > 0 && after <= 0) update(chunkPos, 0, 0, -1);
+    }
+
+    /** Applies a change to the level total and to every quadtree node above the chunk. */
+    private void update(long chunkPos, int sizeChange, long humidityChange, int statueChange) {
+        this.total.change(sizeChange, humidityChange, statueChange);
+
+        int cellX = ChunkPos.getX(chunkPos) >> CELL_SHIFT;
+        int cellZ = ChunkPos.getZ(chunkPos) >> CELL_SHIFT;
+        for (int layer = 0; layer < LAYERS; layer++) {
+            long key = ChunkPos.asLong(cellX >> layer, cellZ >> layer);
+            Long2ObjectOpenHashMap<Totals> nodes = this.layers.get(layer);
+
+            Totals node = nodes.get(key);
+            if (node == null) {
+                node = new Totals();
+                nodes.put(key, node);
+            }
+
+            node.change(sizeChange, humidityChange, statueChange);
+            if (node.size() == 0) {
+                nodes.remove(key);
+            }
+        }
+    }
+
+    /** Copies the loaded chunk positions. */
+    public long[] chunks() {
+        return this.chunks.toLongArray();
+    }
+
+    /** Throws away all totals and loaded chunks. */
+    void clear() {
+        this.chunks.clear();
+        this.total.clear();
+        this.layers.forEach(Long2ObjectOpenHashMap::clear);
+    }
+
+    /** Whether this agrees with another set of totals. */
+    boolean matches(LoadedHumidity other) {
+        return this.chunks.equals(other.chunks)
+            && this.total.equals(other.total)
+            && this.layers.equals(other.layers);
+    }
+
+    @Override
+    public String toString() {
+        return this.total.toString();
+    }
+
+    /** Humidity totals for a group of loaded chunks. */
+    public static class Totals {
+        private int size = 0;
+        private long humiditySum = 0;
+        private int statueChunks = 0;
+
+        /** Number of loaded chunks. */
+        public int size() {
+            return this.size;
+        }
+
+        /** Total humidity of the chunks, in milli-buckets. */
+        public long humiditySum() {
+            return this.humiditySum;
+        }
+
+        /** Number of the chunks with at least one statue in them. */
+        public int statueChunks() {
+            return this.statueChunks;
+        }
+
+        private void change(int sizeChange, long humidityChange, int statueChange) {
+            this.size += sizeChange;
+            this.humiditySum += humidityChange;
+            this.statueChunks += statueChange;
+        }
+
+        private void add(Totals other) {
+            change(other.size, other.humiditySum, other.statueChunks);
+        }
+
+        private void clear() {
+            this.size = 0;
+            this.humiditySum = 0;
+            this.statueChunks = 0;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Totals totals
+                && this.size == totals.size
+                && this.humiditySum == totals.humiditySum
+                && this.statueChunks == totals.statueChunks;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.humiditySum) * 31 * 31 + this.size * 31 + this.statueChunks;
+        }
+
+        @Override
+        public String toString() {
+            return "%d chunks, %d mB, %d with statues".formatted(this.size, this.humiditySum, this.statueChunks);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import mimickal.minecraft.util.ChunkUtil;
+import mimickal.minecraft.util.TimeWheel;
+import mimickal.minecraft.waterworks.Waterworks;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.List;
+
+/**
+ * Where every rain collector (any block in the {@link #TAG} tag, like a cauldron) is in each loaded chunk.
+ * <p>
+ * Collectors don't tick. Instead, chunks with collectors in them are spread over a {@link TimeWheel},
+ * and each visit fills the chunk's collectors with however much rain they would have caught since the last one
+ * (see {@link mimickal.minecraft.waterworks.eva.events.RainCollection}).
+ * <p>
+ * Chunks are scanned for collectors when they load, and kept up to date as blocks change
+ * (see {@link mimickal.minecraft.waterworks.eva.events.Lifecycle}). Tag changes (e.g. from "/reload")
+ * only apply to chunks loaded afterwards.
+ */
+public class RainCollectors {
+    public static final TagKey<Block> TAG = TagKey.create(
+        Registry.BLOCK_REGISTRY, new ResourceLocation(Waterworks.MOD_NAME, "rain_collectors")
+    );
+
+    private final ServerLevel level;
+    /** Chunks with at least one collector, keyed by packed {@link ChunkPos#toLong()}. */
+    private final Long2ObjectOpenHashMap<Chunk> chunks = new Long2ObjectOpenHashMap<>();
+    /** The same chunks as {@link #chunks}. Starts with one slot and is sized by {@link #advance}. */
+    private final TimeWheel<Chunk> wheel = new TimeWheel<>(1);
+
+    /** Gets the collectors for the given level. They live in the level's {@link WeatherContext}. */
+    public static RainCollectors get(ServerLevel level) {
+        return WeatherContext.get(level).rainCollectors();
+    }
+
+    RainCollectors(ServerLevel level) {
+        this.level = level;
+    }
+
+    /** Whether the given block collects rain. */
+    public static boolean isCollector(BlockState state) {
+        return state.is(TAG);
+    }
+
+    /** Finds every collector in a newly loaded chunk. Chunks without any aren't tracked at all. */
+    public void onChunkLoad(LevelChunk chunk) {
+        long chunkPos = chunk.getPos().toLong();
+        LongOpenHashSet positions = new LongOpenHashSet();
+        ChunkUtil.findBlocks(chunk, RainCollectors::isCollector, positions::add);
+        if (positions.isEmpty()) return;
+
+        Chunk collectors = new Chunk(chunkPos, positions, this.level.getGameTime());
+        this.chunks.put(chunkPos, collectors);
+        this.wheel.add(chunkPos, collectors);
+    }
+
+    public void onChunkUnload(long chunkPos) {
+        forget(chunkPos);
+    }
+
+    /** Adds or removes a collector at the given position, depending on what's there now. */
+    public void onBlockChange(BlockPos pos) {
+        long chunkPos = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+        LevelChunk chunk = this.level.getChunkSource().getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk == null) return;
+
+        Chunk collectors = this.chunks.get(chunkPos);
+        if (isCollector(chunk.getBlockState(pos))) {
+            if (collectors == null) {
+                collectors = new Chunk(chunkPos, new LongOpenHashSet(), this.level.getGameTime());
+                this.chunks.put(chunkPos, collectors);
+                this.wheel.add(chunkPos, collectors);
+            }
+            collectors.positions.add(pos.asLong());
+        } else if (collectors != null) {
+            collectors.positions.remove(pos.asLong());
+            if (collectors.positions.isEmpty()) {
+                forget(chunkPos);
+            }
+        }
+    }
+
+    /**
+     * Returns the chunks in the wheel's current slot, then moves on to the next one. Call this every tick.
+     * The returned list is live, so don't hold on to it past the current tick.
+     * @param slots Number of slots the wheel should have, which is also how many ticks a full lap takes.
+     */
+    public List<Chunk> advance(int slots) {
+        this.wheel.resize(slots);
+        return this.wheel.advance();
+    }
+
+    private void forget(long chunkPos) {
+        if (this.chunks.remove(chunkPos) != null) {
+            this.wheel.remove(chunkPos);
+        }
+    }
+
+    /** Number of collectors across all loaded chunks. */
+    public int size() {
+        return this.chunks.values().stream().mapToInt(chunk -> chunk.positions.size()).sum();
+    }
+
+    /** The collectors in one chunk, and when we last filled them. */
+    public static class Chunk {
+        private final long chunkPos;
+        private final LongOpenHashSet positions;
+        private long lastVisit;
+
+        private Chunk(long chunkPos, LongOpenHashSet positions, long lastVisit) {
+            this.chunkPos = chunkPos;
+            this.positions = positions;
+            this.lastVisit = lastVisit;
+        }
+
+        /** Packed {@link ChunkPos#toLong()}. */
+        public long chunkPos() {
+            return this.chunkPos;
+        }
+
+        /**
+         * Copies out the packed {@link BlockPos#asLong()} of each collector.
+         * This is a copy, so filling collectors (which changes blocks) while going through it is fine.
+         */
+        public long[] positions() {
+            return this.positions.toLongArray();
+        }
+
+        /** Marks the chunk as visited now, and returns how many ticks it's been since the last visit. */
+        public long visit(long gameTime) {
+            long elapsed = gameTime - this.lastVisit;
+            this.lastVisit = gameTime;
+            return Math.max(elapsed, 0);
+        }
+    }
+}
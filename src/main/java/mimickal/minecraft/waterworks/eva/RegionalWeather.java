@@ -0,0 +1,94 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import mimickal.minecraft.waterworks.Config;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+
+/**
+ * Where it's raining in a level.
+ * <p>
+ * Normally that's just vanilla's level-wide weather. With {@link Config#rainRegional} enabled,
+ * each weather cell (see {@link LoadedHumidity#CELL_WIDTH}) rains or clears on its own,
+ * and this tracks which cells are raining. Everything that cares whether it's raining somewhere
+ * should ask this instead of {@link Level#isRaining()}.
+ * <p>
+ * Cell weather isn't saved. Every cell starts out clear when the server starts.
+ */
+public class RegionalWeather {
+    private final ServerLevel level;
+    private final LongSet rainingCells = new LongOpenHashSet();
+    /** {@link ConfigSnapshot#rainRegional} for the current tick. See {@link #startTick}. */
+    private boolean regional = ConfigSnapshot.get().rainRegional();
+
+    /** Gets the weather for the given level. It lives in the level's {@link WeatherContext}. */
+    public static RegionalWeather get(ServerLevel level) {
+        return WeatherContext.get(level).weather();
+    }
+
+    RegionalWeather(ServerLevel level) {
+        this.level = level;
+    }
+
+    /** Picks up the tick's config, so the answers here don't change partway through a tick. */
+    void startTick(ConfigSnapshot config) {
+        this.regional = config.rainRegional();
+    }
+
+    /**
+     * Whether it's raining in the given chunk.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    public boolean isRaining(long chunkPos) {
+        if (!this.regional) return this.level.isRaining();
+        return this.rainingCells.contains(LoadedHumidity.cellKey(chunkPos));
+    }
+
+    /** Whether it's raining at the given position. */
+    public boolean isRaining(BlockPos pos) {
+        return isRaining(ChunkPos.asLong(pos));
+    }
+
+    /** Whether it's raining anywhere in the level. */
+    public boolean isRainingAnywhere() {
+        if (!this.regional) return this.level.isRaining();
+        return !this.rainingCells.isEmpty();
+    }
+
+    /** Whether it's clear anywhere in the level. */
+    public boolean isClearAnywhere() {
+        if (!this.regional) return !this.level.isRaining();
+        // Any cell we don't know about is clear, and there are always more cells.
+        return true;
+    }
+
+    /** Whether the given cell is raining. Only meaningful with regional weather enabled. */
+    public boolean isCellRaining(long cellKey) {
+        return this.rainingCells.contains(cellKey);
+    }
+
+    /** Starts or stops rain in a cell. */
+    public void setCellRaining(long cellKey, boolean raining) {
+        if (raining) {
+            this.rainingCells.add(cellKey);
+        } else {
+            this.rainingCells.remove(cellKey);
+        }
+    }
+
+    /** Forgets the weather in cells that no longer have any loaded chunks. They'll start clear next time. */
+    public void forgetUnloadedCells(LoadedHumidity loaded) {
+        this.rainingCells.removeIf((long cellKey) -> loaded.cell(cellKey) == null);
+    }
+}
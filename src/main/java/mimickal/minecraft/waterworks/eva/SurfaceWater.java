@@ -0,0 +1,133 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import mimickal.minecraft.util.ChunkUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.function.Predicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * Which columns of each loaded chunk have a water source as their surface block.
+ * <p>
+ * Each chunk gets a 256-bit map (one bit per column, stored in 4 longs), built when the chunk loads
+ * and updated whenever a block changes (see {@link mimickal.minecraft.waterworks.eva.events.Lifecycle}).
+ * That lets evaporation skip dry chunks without looking at a single block,
+ * and pick a random wet column without scanning the whole surface.
+ * <p>
+ * Not every block change fires an event, so a set bit is only a hint.
+ * Anything picking a column from the map needs to check it, and {@link #onBlockChange} columns that turned out wrong.
+ */
+public class SurfaceWater {
+    private static final Heightmap.Types HEIGHTMAP = Heightmap.Types.MOTION_BLOCKING_NO_LEAVES;
+    public static final Predicate<BlockState> WATER_SOURCE = state -> (
+        state.is(Blocks.WATER) && state.getFluidState().isSource()
+    );
+
+    private final ServerLevel level;
+    /** Column bitmaps, keyed by packed {@link ChunkPos#toLong()}. Bit {@code (z << 4) | x} is column (x, z). */
+    private final Long2ObjectOpenHashMap<long[]> chunks = new Long2ObjectOpenHashMap<>();
+    /** Reused for every block change. This is only ever touched on the server thread. */
+    private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+    /** Gets the surface water map for the given level. It lives in the level's {@link WeatherContext}. */
+    public static SurfaceWater get(ServerLevel level) {
+        return WeatherContext.get(level).surfaceWater();
+    }
+
+    SurfaceWater(ServerLevel level) {
+        this.level = level;
+    }
+
+    /** Builds the map for a newly loaded chunk by checking the surface block of every column. */
+    public void onChunkLoad(LevelChunk chunk) {
+        this.chunks.put(chunk.getPos().toLong(), ChunkUtil.surfaceColumns(chunk, HEIGHTMAP, WATER_SOURCE));
+    }
+
+    public void onChunkUnload(long chunkPos) {
+        this.chunks.remove(chunkPos);
+    }
+
+    /**
+     * Re-checks the column the given block is in.
+     * Call this whenever a block changes, since a change anywhere in a column can change its surface.
+     */
+    public void onBlockChange(BlockPos pos) {
+        long[] columns = this.chunks.get(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if (columns == null) return;
+
+        LevelChunk chunk = this.level.getChunkSource().getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk == null) return;
+
+        updateColumn(chunk, columns, pos.getX() & 15, pos.getZ() & 15);
+    }
+
+    /** Whether the given chunk (probably) has any surface water. Unknown chunks have none. */
+    public boolean hasWater(long chunkPos) {
+        long[] columns = this.chunks.get(chunkPos);
+        return columns != null && (columns[0] | columns[1] | columns[2] | columns[3]) != 0;
+    }
+
+    /**
+     * Picks a random column of the given chunk that (probably) has surface water. Every such column is equally likely.
+     * @return The column's bit index ({@code (z << 4) | x}), or -1 if there are none or we haven't mapped the chunk.
+     */
+    public int randomColumn(long chunkPos, RandomGenerator random) {
+        long[] columns = this.chunks.get(chunkPos);
+        if (columns == null) return -1;
+
+        int count = Long.bitCount(columns[0]) + Long.bitCount(columns[1])
+            + Long.bitCount(columns[2]) + Long.bitCount(columns[3]);
+        return count > 0 ? nthSetBit(columns, random.nextInt(count)) : -1;
+    }
+
+    private void updateColumn(LevelChunk chunk, long[] columns, int x, int z) {
+        int bit = (z << 4) | x;
+        if (isSurfaceSource(chunk, x, z, this.cursor)) {
+            columns[bit >> 6] |= 1L << bit;
+        } else {
+            columns[bit >> 6] &= ~(1L << bit);
+        }
+    }
+
+    /**
+     * Whether the surface block of the given column is a water source.
+     * Leaves {@code pos} pointing at that surface block.
+     */
+    private static boolean isSurfaceSource(LevelChunk chunk, int x, int z, BlockPos.MutableBlockPos pos) {
+        ChunkPos chunkPos = chunk.getPos();
+        pos.set(chunkPos.getBlockX(x), chunk.getHeight(HEIGHTMAP, x, z), chunkPos.getBlockZ(z));
+        return WATER_SOURCE.test(chunk.getBlockState(pos));
+    }
+
+    /** Returns the index of the {@code n}th (from 0) set bit across all the given words. */
+    private static int nthSetBit(long[] words, int n) {
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            int count = Long.bitCount(bits);
+            if (n >= count) {
+                n -= count;
+                continue;
+            }
+
+            for (int i = 0; i < n; i++) {
+                bits &= bits - 1; // Clear lowest set bit
+            }
+            return (word << 6) + Long.numberOfTrailingZeros(bits);
+        }
+        throw new IllegalArgumentException("Not enough bits set");
+    }
+}
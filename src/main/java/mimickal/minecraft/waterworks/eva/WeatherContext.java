@@ -0,0 +1,278 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva;
+
+import mimickal.minecraft.util.BudgetedQueue;
+import mimickal.minecraft.util.TickGuard;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.eva.climate.ClimateCache;
+import mimickal.minecraft.waterworks.eva.diffusion.DiffusionStep;
+import mimickal.minecraft.waterworks.eva.planning.PlanQueue;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything EVA keeps for a single level, in one place.
+ * <p>
+ * A context is created when its level loads and thrown away when it unloads
+ * (see {@link mimickal.minecraft.waterworks.eva.events.Lifecycle}), so nothing outlives its level.
+ * It holds the level's {@link EvaData} so the tick handlers don't have to dig it out of the level's data storage
+ * over and over, the per-level helpers ({@link ClimateCache}, {@link RegionalWeather}, and friends),
+ * each handler's tick guards and queues, and a few values worked out once per tick (see {@link #startTick}),
+ * including the {@link ConfigSnapshot} the whole tick runs with.
+ * <p>
+ * All of this is only meant to be used from the main server thread.
+ */
+public class WeatherContext {
+    private static final Map<ResourceKey<Level>, WeatherContext> CONTEXTS = new HashMap<>();
+
+    private static final int RAIN_DELAY_MIN = 10 * 20; // 10 seconds
+    private static final int RAIN_DELAY_MAX = 30 * 20; // 30 seconds
+    private static final int RAIN_VISUAL_DELAY = 20; // 1 second
+    private static final int BUCKET_DELAY = 30 * 20; // 30 seconds
+
+    private final ServerLevel level;
+    @Nullable
+    private EvaData data = null;
+    private final boolean hasSkyLight;
+
+    private final ClimateCache climate;
+    private final EvaRandom random;
+    private final LoadedChunks loadedChunks;
+    private final RegionalWeather weather;
+    private final SurfaceWater surfaceWater;
+    private final RainCollectors rainCollectors;
+
+    private final BudgetedQueue<LevelChunk> accumulationQueue = new BudgetedQueue<>();
+    private final PlanQueue accumulationPlans = new PlanQueue();
+    private final BudgetedQueue<LevelChunk> evaporationQueue = new BudgetedQueue<>();
+    private final PlanQueue evaporationPlans = new PlanQueue();
+    private final TickGuard bucketGuard = new TickGuard.Constant(BUCKET_DELAY);
+    private final TickGuard rainGuard;
+    private final TickGuard rainVisualGuard = new TickGuard.Constant(RAIN_VISUAL_DELAY);
+    @Nullable
+    private TickGuard diffusionGuard = null;
+    @Nullable
+    private DiffusionStep diffusionStep = null;
+
+    private ConfigSnapshot config = ConfigSnapshot.get();
+    private boolean rainingAnywhere = false;
+    private boolean clearAnywhere = false;
+    private double sunScale = 1;
+
+    /**
+     * Gets the context for the given level.
+     * This creates it if the level hasn't finished loading yet, since chunks can load before it has.
+     */
+    public static WeatherContext get(ServerLevel level) {
+        return CONTEXTS.computeIfAbsent(level.dimension(), key -> new WeatherContext(level));
+    }
+
+    /**
+     * Makes sure the context for a newly loaded level belongs to that level.
+     * A context left over from an earlier load of the same dimension is disposed of and replaced.
+     * One this level's chunks already created (see {@link #get}) is kept.
+     */
+    public static void create(ServerLevel level) {
+        WeatherContext existing = CONTEXTS.get(level.dimension());
+        if (existing != null && existing.level == level) return;
+
+        dispose(level.dimension());
+        CONTEXTS.put(level.dimension(), new WeatherContext(level));
+    }
+
+    /**
+     * Throws away the context for a level that's going away, stopping anything it still has running.
+     * Blocks until the level's {@link EvaData} has been written to disk.
+     */
+    public static void dispose(ServerLevel level) {
+        dispose(level.dimension());
+    }
+
+    private static void dispose(ResourceKey<Level> dimension) {
+        WeatherContext context = CONTEXTS.remove(dimension);
+        if (context == null) return;
+
+        context.accumulationPlans.cancel();
+        context.evaporationPlans.cancel();
+        if (context.diffusionStep != null) {
+            context.diffusionStep.cancel();
+        }
+
+        // Goes through the context's own level rather than a static lookup, so this can't make a new context.
+        context.data().close();
+    }
+
+    private WeatherContext(ServerLevel level) {
+        this.level = level;
+        this.hasSkyLight = level.dimensionType().hasSkyLight();
+
+        this.climate = new ClimateCache(level);
+        this.random = new EvaRandom(level);
+        this.loadedChunks = new LoadedChunks(level);
+        this.weather = new RegionalWeather(level);
+        this.surfaceWater = new SurfaceWater(level);
+        this.rainCollectors = new RainCollectors(level);
+
+        this.rainGuard = new TickGuard.Random(this.random.get(EvaRandom.Stream.RAIN), RAIN_DELAY_MIN, RAIN_DELAY_MAX);
+    }
+
+    /** Works out the values that every handler wants and that don't change during a tick. Call once per tick. */
+    public void startTick() {
+        this.config = ConfigSnapshot.get();
+        this.weather.startTick(this.config);
+        this.rainingAnywhere = this.weather.isRainingAnywhere();
+        this.clearAnywhere = this.weather.isClearAnywhere();
+        this.sunScale = calcSunScale(this.level.getLevelData().getDayTime(), this.config.evaporationSunMin());
+    }
+
+    /**
+     * Returns a scalar that is at its max when the sun is highest, and minimum when the sun disappears.
+     * It remains at that minimum throughout the night.
+     */
+    private static double calcSunScale(long tod, double min) {
+        // One hour = 1000 "units". 0 is 6AM, 1000 is 7AM, 6000 is "noon", 18000 is "midnight" etc...
+        // These are the same units used in the "/time set X" command.
+        // This number continues counting up the next day, so 24000 is 6AM the next day.
+        // The sun first appears on the horizon at 5AM (23000). Note, DOES NOT map to "day" ("day" is 7AM, 1000).
+        // The sun is highest at 12 AM (6000), also mapped to keyword "noon".
+        // The sun disappears under the horizon at 7PM (13000), also mapped to keyword "night".
+
+        tod += 1000;  // Shift so sun appearance is 0 instead of 23000. This just makes the math easier.
+        tod %= 24000; // Always deal with the 0 - 24000 range.
+
+        // We pull this off with a piecewise function.
+        if (min < 1 && 0 <= tod && tod <= 14000) {
+            // During the day, time-of-day corresponds to the angle of the sun in the sky.
+            // Normalize time-of-day to value between 0 and PI so sine can work its magic.
+            return min + ((1 - min) * Math.sin(tod * Math.PI / 14000));
+        } else {
+            // During the night, just return the minimum.
+            return min;
+        }
+    }
+
+    public ServerLevel level() {
+        return this.level;
+    }
+
+    /**
+     * The level's {@link EvaData}. This is looked up the first time it's needed rather than up front,
+     * since EvaData itself uses parts of this context while it's being created.
+     */
+    public EvaData data() {
+        if (this.data == null) {
+            this.data = EvaData.get(this.level);
+        }
+        return this.data;
+    }
+
+    /** Whether the level has weather at all (i.e. it has a sky). */
+    public boolean hasSkyLight() {
+        return this.hasSkyLight;
+    }
+
+    public ClimateCache climate() {
+        return this.climate;
+    }
+
+    public EvaRandom random() {
+        return this.random;
+    }
+
+    public LoadedChunks loadedChunks() {
+        return this.loadedChunks;
+    }
+
+    public RegionalWeather weather() {
+        return this.weather;
+    }
+
+    public SurfaceWater surfaceWater() {
+        return this.surfaceWater;
+    }
+
+    public RainCollectors rainCollectors() {
+        return this.rainCollectors;
+    }
+
+    /** The config as it was at the start of this tick. */
+    public ConfigSnapshot config() {
+        return this.config;
+    }
+
+    /**
+     * How strong the sun was at the start of this tick, from {@link ConfigSnapshot#evaporationSunMin} at night
+     * up to 1 at noon. Evaporation scales with this.
+     */
+    public double sunScale() {
+        return this.sunScale;
+    }
+
+    /** Whether it was raining anywhere in the level at the start of this tick. See {@link RegionalWeather}. */
+    public boolean isRainingAnywhere() {
+        return this.rainingAnywhere;
+    }
+
+    /** Whether it was clear anywhere in the level at the start of this tick. See {@link RegionalWeather}. */
+    public boolean isClearAnywhere() {
+        return this.clearAnywhere;
+    }
+
+    public BudgetedQueue<LevelChunk> accumulationQueue() {
+        return this.accumulationQueue;
+    }
+
+    public PlanQueue accumulationPlans() {
+        return this.accumulationPlans;
+    }
+
+    public BudgetedQueue<LevelChunk> evaporationQueue() {
+        return this.evaporationQueue;
+    }
+
+    public PlanQueue evaporationPlans() {
+        return this.evaporationPlans;
+    }
+
+    public TickGuard bucketGuard() {
+        return this.bucketGuard;
+    }
+
+    public TickGuard rainGuard() {
+        return this.rainGuard;
+    }
+
+    public TickGuard rainVisualGuard() {
+        return this.rainVisualGuard;
+    }
+
+    /** Diffusion's tick guard. The interval is read from the config the first time this is called. */
+    public TickGuard diffusionGuard() {
+        if (this.diffusionGuard == null) {
+            this.diffusionGuard = new TickGuard.Constant(this.config.diffusionIntervalTicks());
+        }
+        return this.diffusionGuard;
+    }
+
+    /** The diffusion step that's currently running or being applied, if any. */
+    @Nullable
+    public DiffusionStep diffusionStep() {
+        return this.diffusionStep;
+    }
+
+    public void setDiffusionStep(@Nullable DiffusionStep step) {
+        this.diffusionStep = step;
+    }
+}
@@ -0,0 +1,126 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.climate;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMaps;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.QuartPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.chunk.ChunkAccess;
+
+/**
+ * A summary of the climate in a single chunk, so we don't have to go through biome lookups every time
+ * one of our handlers wants to know how wet or dry a spot is.
+ * <p>
+ * Biomes are stored in 4x4x4 block cells. We only care about the layer of cells at sea level,
+ * since that's (roughly) where rain lands and water evaporates from. Deeper cells can be cave biomes,
+ * which shouldn't affect the weather.
+ */
+public class ChunkClimate {
+    /** Biome cells along each horizontal side of a chunk. */
+    private static final int CELLS = 4;
+    static final int CENTER_CELL = 2;
+
+    private final Biome[] biomes = new Biome[CELLS * CELLS];
+    private final float[] downfall = new float[CELLS * CELLS];
+    private final Biome.Precipitation[] precipitation = new Biome.Precipitation[CELLS * CELLS];
+
+    /** How many of this chunk's cells are in each biome. */
+    private final Reference2IntMap<Biome> histogram = new Reference2IntOpenHashMap<>();
+
+    private final float meanDownfall;
+    private final boolean canAccumulate;
+    private final boolean canEvaporate;
+
+    public ChunkClimate(ChunkAccess chunk, int seaLevel) {
+        ChunkPos chunkPos = chunk.getPos();
+        int minQuartX = QuartPos.fromSection(chunkPos.x);
+        int minQuartZ = QuartPos.fromSection(chunkPos.z);
+        int quartY = QuartPos.fromBlock(seaLevel);
+
+        for (int z = 0; z < CELLS; z++) {
+            for (int x = 0; x < CELLS; x++) {
+                Biome biome = chunk.getNoiseBiome(minQuartX + x, quartY, minQuartZ + z).value();
+                int cell = cellIndex(x, z);
+                this.biomes[cell] = biome;
+                this.downfall[cell] = biome.getDownfall();
+                this.precipitation[cell] = biome.getPrecipitation();
+                this.histogram.mergeInt(biome, 1, Integer::sum);
+            }
+        }
+
+        // Most chunks only have one or two biomes, so it's cheaper to work these out per biome than per cell.
+        float downfallSum = 0;
+        boolean anyRain = false;
+        boolean anyDry = false;
+        for (Reference2IntMap.Entry<Biome> entry : Reference2IntMaps.fastIterable(this.histogram)) {
+            Biome biome = entry.getKey();
+            downfallSum += biome.getDownfall() * entry.getIntValue();
+            anyRain |= biome.getPrecipitation() == Biome.Precipitation.RAIN;
+            anyDry |= biome.getDownfall() < 1;
+        }
+
+        this.meanDownfall = downfallSum / this.biomes.length;
+        this.canAccumulate = anyRain;
+        this.canEvaporate = anyDry;
+    }
+
+    /** The biome of the cell the given position's column falls in. */
+    public Biome biome(BlockPos pos) {
+        return this.biomes[cellIndex(pos)];
+    }
+
+    /** The {@link Biome#getDownfall()} of the cell the given position's column falls in. */
+    public float downfall(BlockPos pos) {
+        return this.downfall[cellIndex(pos)];
+    }
+
+    /** The {@link Biome#getPrecipitation()} of the cell the given position's column falls in. */
+    public Biome.Precipitation precipitation(BlockPos pos) {
+        return this.precipitation[cellIndex(pos)];
+    }
+
+    /**
+     * The downfall of the cell in the center of the chunk.
+     * See {@link ClimateCache#centerDownfall(long)} for why this isn't {@link #meanDownfall()}.
+     */
+    public float centerDownfall() {
+        return this.downfall[cellIndex(CENTER_CELL, CENTER_CELL)];
+    }
+
+    /** The average downfall across the whole chunk. */
+    public float meanDownfall() {
+        return this.meanDownfall;
+    }
+
+    /** How many of this chunk's cells are in each biome. */
+    public Reference2IntMap<Biome> histogram() {
+        return Reference2IntMaps.unmodifiable(this.histogram);
+    }
+
+    /** Whether rain can accumulate anywhere in this chunk. False for e.g. deserts and snowy biomes. */
+    public boolean canAccumulate() {
+        return this.canAccumulate;
+    }
+
+    /** Whether water can evaporate anywhere in this chunk. False if every cell has max downfall. */
+    public boolean canEvaporate() {
+        return this.canEvaporate;
+    }
+
+    private static int cellIndex(BlockPos pos) {
+        return cellIndex(QuartPos.fromBlock(pos.getX()) & (CELLS - 1), QuartPos.fromBlock(pos.getZ()) & (CELLS - 1));
+    }
+
+    private static int cellIndex(int cellX, int cellZ) {
+        return cellZ * CELLS + cellX;
+    }
+}
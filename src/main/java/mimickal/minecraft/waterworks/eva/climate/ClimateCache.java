@@ -0,0 +1,102 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.climate;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.QuartPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds a {@link ChunkClimate} for every loaded chunk in a level.
+ * <p>
+ * Summaries are built when a chunk loads and dropped when it unloads
+ * (see {@link mimickal.minecraft.waterworks.eva.events.Lifecycle}).
+ * Positions in chunks that aren't loaded fall back to regular biome lookups.
+ */
+public class ClimateCache {
+    private final ServerLevel level;
+    private final Long2ObjectOpenHashMap<ChunkClimate> chunks = new Long2ObjectOpenHashMap<>();
+
+    /** Gets the climate cache for the given level. It lives in the level's {@link WeatherContext}. */
+    public static ClimateCache get(ServerLevel level) {
+        return WeatherContext.get(level).climate();
+    }
+
+    public ClimateCache(ServerLevel level) {
+        this.level = level;
+    }
+
+    /** Summarizes a newly loaded chunk. */
+    public void onChunkLoad(LevelChunk chunk) {
+        this.chunks.put(chunk.getPos().toLong(), new ChunkClimate(chunk, this.level.getSeaLevel()));
+    }
+
+    /** Forgets an unloaded chunk. */
+    public void onChunkUnload(long chunkPos) {
+        this.chunks.remove(chunkPos);
+    }
+
+    /**
+     * Gets the climate summary for a loaded chunk.
+     * This builds it if we somehow missed the chunk loading (e.g. the mod was added to a running server).
+     */
+    public ChunkClimate get(LevelChunk chunk) {
+        ChunkClimate climate = this.chunks.get(chunk.getPos().toLong());
+        if (climate == null) {
+            climate = new ChunkClimate(chunk, this.level.getSeaLevel());
+            this.chunks.put(chunk.getPos().toLong(), climate);
+        }
+        return climate;
+    }
+
+    /**
+     * Gets the climate summary for the given chunk, if it's loaded.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    @Nullable
+    public ChunkClimate get(long chunkPos) {
+        return this.chunks.get(chunkPos);
+    }
+
+    /** Gets the {@link Biome#getDownfall()} at the given position. */
+    public float downfall(BlockPos pos) {
+        ChunkClimate climate = get(ChunkPos.asLong(pos));
+        return climate != null ? climate.downfall(pos) : this.level.getBiome(pos).value().getDownfall();
+    }
+
+    /** Gets the {@link Biome#getPrecipitation()} at the given position. */
+    public Biome.Precipitation precipitation(BlockPos pos) {
+        ChunkClimate climate = get(ChunkPos.asLong(pos));
+        return climate != null ? climate.precipitation(pos) : this.level.getBiome(pos).value().getPrecipitation();
+    }
+
+    /**
+     * Gets the downfall of the biome in the center of the given chunk.
+     * <p>
+     * Anything that needs to give the same answer for a chunk every time (like default humidity) should use this,
+     * since it doesn't depend on where in the chunk we look. It doesn't depend on whether the chunk is loaded,
+     * either: unloaded chunks read the same cell straight from the level's biome source.
+     * @param chunkPos A packed {@link ChunkPos#toLong()}.
+     */
+    public float centerDownfall(long chunkPos) {
+        ChunkClimate climate = get(chunkPos);
+        if (climate != null) return climate.centerDownfall();
+
+        return this.level.getNoiseBiome(
+            QuartPos.fromSection(ChunkPos.getX(chunkPos)) + ChunkClimate.CENTER_CELL,
+            QuartPos.fromBlock(this.level.getSeaLevel()),
+            QuartPos.fromSection(ChunkPos.getZ(chunkPos)) + ChunkClimate.CENTER_CELL
+        ).value().getDownfall();
+    }
+}
@@ -12,7 +12,11 @@ import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.builder.RequiredArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.BudgetedQueue;
 import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.LoadedHumidity;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import mimickal.minecraft.waterworks.eva.planning.PlanQueue;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.core.BlockPos;
@@ -27,7 +31,7 @@ import java.util.Arrays;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
-/** Command for getting and setting a chunk's humidity. */
+/** Command for getting and setting a chunk's humidity, and checking how the humidity systems are doing. */
 public class HumidityCommand {
     private static final Logger LOGGER = LogUtils.getLogger();
     private static final String CMD_NAME = "humidity";
@@ -65,13 +69,19 @@ public class HumidityCommand {
             )
             .then(addOptionalCoordinateArgs(HumidityCommand::resetHumidityAtPos));
 
+    /** Subcommand: {@code humidity stats} */
+    private static final LiteralArgumentBuilder<CommandSourceStack> SUBCMD_STATS =
+        Commands.literal("stats")
+            .executes(HumidityCommand::printStats);
+
     /** Top-level command: {@code humidity} */
     private static final LiteralArgumentBuilder<CommandSourceStack> CMD_HUMIDITY =
         Commands.literal(CMD_NAME)
             .requires(req -> req.hasPermission(Commands.LEVEL_GAMEMASTERS))
             .then(SUBCMD_GET)
             .then(SUBCMD_SET)
-            .then(SUBCMD_RESET);
+            .then(SUBCMD_RESET)
+            .then(SUBCMD_STATS);
 
     @SubscribeEvent
     public static void register(RegisterCommandsEvent event) {
@@ -150,6 +160,44 @@ public class HumidityCommand {
         return 0; // Still doesn't correspond to anything.
     }
 
+    /**
+     * Prints loaded humidity totals, how the accumulation and evaporation queues are keeping up,
+     * and how many rain collectors are loaded.
+     */
+    private static int printStats(CommandContext<CommandSourceStack> context) {
+        ServerLevel level = context.getSource().getLevel();
+        LoadedHumidity loaded = EvaData.get(level).getLoadedHumidity();
+
+        sendMsg(context, "Loaded chunks in", level.dimension().location(), ":", loaded.size());
+        sendMsg(context, "Loaded humidity:", loaded.humiditySum(), "mB,", loaded.statueChunks(), "chunks with statues");
+        WeatherContext weather = WeatherContext.get(level);
+        sendQueueStats(context, "Accumulation", weather.accumulationQueue(), weather.accumulationPlans());
+        sendQueueStats(context, "Evaporation", weather.evaporationQueue(), weather.evaporationPlans());
+        sendMsg(context, "Rain collectors:", weather.rainCollectors().size());
+        return loaded.size();
+    }
+
+    private static void sendQueueStats(
+        CommandContext<CommandSourceStack> context,
+        String name,
+        BudgetedQueue<?> queue,
+        PlanQueue plans
+    ) {
+        sendMsg(context,
+            name, "queue:",
+            queue.depth(), "waiting (peak", queue.peakDepth() + "),",
+            queue.processed(), "processed,",
+            queue.dropped(), "dropped,",
+            String.format("last tick %.3f ms", queue.lastDrainNanos() / 1_000_000d)
+        );
+        sendMsg(context,
+            name, "plans:",
+            plans.pending(), "batches pending,",
+            plans.committed(), "committed,",
+            plans.stale(), "stale"
+        );
+    }
+
     /** Returns the position of the chunk the player who invoked this command is in. */
     private static ChunkPos getPlayerChunk(CommandContext<CommandSourceStack> context) {
         BlockPos playerPosition = new BlockPos(context.getSource().getPosition());
@@ -0,0 +1,163 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.diffusion;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import mimickal.minecraft.waterworks.eva.storage.ChunkValueMap;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A copy of loaded chunk humidity laid out for diffusing it between neighboring chunks.
+ * <p>
+ * Chunks are grouped into square tiles of {@link #TILE_WIDTH} chunks, each a flat {@code int[]}.
+ * Only tiles with loaded chunks exist, so players far apart don't mean a huge mostly-empty grid.
+ * Chunks in a tile that aren't loaded hold {@link ChunkValueMap#MISSING} and are left alone.
+ * <p>
+ * A step reads from one set of tiles and writes to another, so every tile can be worked on at the same time.
+ * Nothing here touches the level, so this is safe to run off the main thread.
+ */
+public class DiffusionGrid {
+    private static final int TILE_SHIFT = 5;
+    private static final int TILE_WIDTH = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_WIDTH - 1;
+    /** Tiles per task when splitting work across threads. */
+    private static final int TILES_PER_TASK = 4;
+
+    private final Long2ObjectOpenHashMap<int[]> current = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<int[]> next = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * @param chunks Packed {@link ChunkPos#toLong()} values of the chunks to diffuse between.
+     * @param humidity Each chunk's humidity, in milli-buckets.
+     */
+    public DiffusionGrid(long[] chunks, int[] humidity) {
+        for (int i = 0; i < chunks.length; i++) {
+            int x = ChunkPos.getX(chunks[i]);
+            int z = ChunkPos.getZ(chunks[i]);
+            long tileKey = ChunkPos.asLong(x >> TILE_SHIFT, z >> TILE_SHIFT);
+
+            int[] tile = this.current.get(tileKey);
+            if (tile == null) {
+                tile = new int[TILE_WIDTH * TILE_WIDTH];
+                Arrays.fill(tile, ChunkValueMap.MISSING);
+                this.current.put(tileKey, tile);
+                this.next.put(tileKey, new int[TILE_WIDTH * TILE_WIDTH]);
+            }
+            tile[index(x, z)] = humidity[i];
+        }
+    }
+
+    /**
+     * Runs one diffusion step. Must be called from inside a {@link java.util.concurrent.ForkJoinPool},
+     * which the tiles are split across.
+     * <p>
+     * Each pair of neighboring chunks moves {@code trunc((other - mine) * rate)} milli-buckets towards the drier one.
+     * This is the same amount (with the opposite sign) from either side, and each chunk only writes its own value,
+     * so water is never created or lost no matter how the tiles are split up.
+     * @param rate Fraction of the difference between neighbors that moves per step. Above 0.25 this oscillates.
+     * @return How much each chunk's humidity changed. Chunks that didn't change are left out.
+     */
+    public Result step(double rate) {
+        List<Long2ObjectMap.Entry<int[]>> tiles = new ArrayList<>(this.current.size());
+        Long2ObjectMaps.fastForEach(this.current, tiles::add);
+
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int start = 0; start < tiles.size(); start += TILES_PER_TASK) {
+            List<Long2ObjectMap.Entry<int[]>> batch = tiles.subList(start, Math.min(start + TILES_PER_TASK, tiles.size()));
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    batch.forEach(tile -> stepTile(tile.getLongKey(), tile.getValue(), rate));
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        return collectChanges();
+    }
+
+    /** Works out the next value of every loaded chunk in a tile. Only writes to that tile's {@link #next}. */
+    private void stepTile(long tileKey, int[] tile, double rate) {
+        int[] out = this.next.get(tileKey);
+        int minX = ChunkPos.getX(tileKey) << TILE_SHIFT;
+        int minZ = ChunkPos.getZ(tileKey) << TILE_SHIFT;
+
+        for (int dz = 0; dz < TILE_WIDTH; dz++) {
+            for (int dx = 0; dx < TILE_WIDTH; dx++) {
+                int i = dz * TILE_WIDTH + dx;
+                int mine = tile[i];
+                if (mine == ChunkValueMap.MISSING) {
+                    out[i] = ChunkValueMap.MISSING;
+                    continue;
+                }
+
+                int x = minX + dx;
+                int z = minZ + dz;
+                int change = flux(mine, dx > 0 ? tile[i - 1] : get(x - 1, z), rate)
+                    + flux(mine, dx < TILE_MASK ? tile[i + 1] : get(x + 1, z), rate)
+                    + flux(mine, dz > 0 ? tile[i - TILE_WIDTH] : get(x, z - 1), rate)
+                    + flux(mine, dz < TILE_MASK ? tile[i + TILE_WIDTH] : get(x, z + 1), rate);
+                out[i] = mine + change;
+            }
+        }
+    }
+
+    /** How much moves into a chunk from one neighbor. Unloaded neighbors don't exchange anything. */
+    private static int flux(int mine, int neighbor, double rate) {
+        if (neighbor == ChunkValueMap.MISSING) return 0;
+        // Casting truncates towards 0, so this is exactly the negative of what the neighbor computes.
+        return (int)((long)(neighbor - mine) * rate);
+    }
+
+    /** Reads a chunk from {@link #current}, which may be in another tile. */
+    private int get(int x, int z) {
+        int[] tile = this.current.get(ChunkPos.asLong(x >> TILE_SHIFT, z >> TILE_SHIFT));
+        return tile != null ? tile[index(x, z)] : ChunkValueMap.MISSING;
+    }
+
+    private Result collectChanges() {
+        LongArrayList chunks = new LongArrayList();
+        IntArrayList changes = new IntArrayList();
+
+        Long2ObjectMaps.fastForEach(this.current, entry -> {
+            int[] before = entry.getValue();
+            int[] after = this.next.get(entry.getLongKey());
+            int minX = ChunkPos.getX(entry.getLongKey()) << TILE_SHIFT;
+            int minZ = ChunkPos.getZ(entry.getLongKey()) << TILE_SHIFT;
+
+            for (int i = 0; i < before.length; i++) {
+                if (before[i] == ChunkValueMap.MISSING || before[i] == after[i]) continue;
+                chunks.add(ChunkPos.asLong(minX + (i & TILE_MASK), minZ + (i >> TILE_SHIFT)));
+                changes.add(after[i] - before[i]);
+            }
+        });
+
+        return new Result(chunks.toLongArray(), changes.toIntArray());
+    }
+
+    private static int index(int x, int z) {
+        return (z & TILE_MASK) * TILE_WIDTH + (x & TILE_MASK);
+    }
+
+    /** How much each chunk's humidity changed over a step, as two parallel arrays. */
+    public record Result(long[] chunks, int[] changes) {
+        public int size() {
+            return this.chunks.length;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.diffusion;
+
+import com.mojang.logging.LogUtils;
+import mimickal.minecraft.waterworks.eva.EvaData;
+import net.minecraft.server.level.ServerLevel;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.concurrent.ForkJoinTask;
+
+/** A diffusion step, from running on the pool to having all its changes applied. */
+public class DiffusionStep {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /** Changes applied between budget checks, so we aren't reading the clock after every single one. */
+    private static final int COMMIT_BATCH = 64;
+
+    private final ForkJoinTask<DiffusionGrid.Result> task;
+    @Nullable
+    private DiffusionGrid.Result result = null;
+    /** How many of {@link #result}'s changes have been applied so far. */
+    private int applied = 0;
+
+    public DiffusionStep(ForkJoinTask<DiffusionGrid.Result> task) {
+        this.task = task;
+    }
+
+    /**
+     * Applies as many of this step's changes as fit in the tick budget.
+     * @param budgetNanos How long we can spend applying changes this tick.
+     * @return Whether this step is finished (or failed) and can be thrown away.
+     */
+    public boolean commit(ServerLevel level, EvaData data, long budgetNanos) {
+        if (this.result == null) {
+            if (!this.task.isDone()) return false;
+
+            try {
+                this.result = this.task.join();
+            } catch (RuntimeException e) {
+                LOGGER.error("Humidity diffusion failed in {}", level.dimension().location(), e);
+                return true;
+            }
+        }
+
+        long deadline = System.nanoTime() + budgetNanos;
+        while (this.applied < this.result.size()) {
+            data.changeHumidity(this.result.chunks()[this.applied], this.result.changes()[this.applied]);
+            this.applied++;
+
+            if (this.applied % COMMIT_BATCH == 0 && System.nanoTime() > deadline) break;
+        }
+
+        LOGGER.debug("Applied {}/{} diffusion changes in {}",
+            this.applied, this.result.size(), level.dimension().location()
+        );
+        return this.applied >= this.result.size();
+    }
+
+    /** Stops the step if it's still running. Its changes haven't been applied, so nothing is lost. */
+    public void cancel() {
+        this.task.cancel(false);
+    }
+}
@@ -8,111 +8,150 @@
 package mimickal.minecraft.waterworks.eva.events;
 
 import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.BlockWriteBatch;
+import mimickal.minecraft.util.BudgetedQueue;
 import mimickal.minecraft.util.Chance;
-import mimickal.minecraft.util.ChunkUtil;
-import mimickal.minecraft.util.TickGuard;
 import mimickal.minecraft.waterworks.Config;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.eva.AccumulationBlacklist;
 import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.EvaRandom;
+import mimickal.minecraft.waterworks.eva.LoadedChunks;
+import mimickal.minecraft.waterworks.eva.RegionalWeather;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import mimickal.minecraft.waterworks.eva.climate.ChunkClimate;
+import mimickal.minecraft.waterworks.eva.climate.ClimateCache;
+import mimickal.minecraft.waterworks.eva.planning.BlockPlan;
+import mimickal.minecraft.waterworks.eva.planning.ChunkSnapshot;
+import mimickal.minecraft.waterworks.eva.planning.PlanQueue;
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceKey;
-import net.minecraft.resources.ResourceLocation;
-import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.Level;
 import net.minecraft.world.level.biome.Biome;
-import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.levelgen.Heightmap;
-import net.minecraftforge.event.TickEvent;
-import net.minecraftforge.eventbus.api.SubscribeEvent;
-import net.minecraftforge.registries.ForgeRegistries;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
 import org.slf4j.Logger;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
 
 public class Accumulation {
     private static final Logger LOGGER = LogUtils.getLogger();
-    private static final Map<ResourceKey<Level>, TickGuard.Config> TICK_GUARDS = new HashMap<>();
 
     /**
-     * {@link Config#accumulationBlacklist} as a {@link Set}, to speed up filter operations.
-     * This is recalculated by {@link #onBlacklist} when the underlying config changes.
-     */
-    private static Set<Block> BLACKLIST_SET = new HashSet<>();
-    private static int BLACKLIST_HASH = 0;
-
-    /**
-     * {@link TickEvent.WorldTickEvent} handler that accumulates water when it's raining.
+     * Per-tick handler that accumulates water when it's raining. Run by {@link WeatherTick}.
      * <p>
      * Rain only accumulates when:
-     * <li>It's raining.</li>
-     * <li>The block is in a biome where it rains (e.g. not a desert).</li>
+     * <li>It's raining (in the chunk's weather cell, with regional rain).</li>
+     * <li>The block is in a biome where it rains (e.g. not a desert). Chunks with no such biomes are skipped.</li>
      * <li>The block is visible to the sky.</li>
      * <li>Rain can accumulate in the biome.</li>
      * <li>the selected block is not on the accumulation blacklist.</li>
+     * <p>
+     * Loaded chunks are spread over a wheel of slots, sized by {@link Config#accumulationSmoothness},
+     * and each tick only looks at one slot's worth. The chunks picked from it are queued up,
+     * then worked through under {@link Config#accumulationBudgetMicros} per tick.
+     * On the main thread we only do the cheap checks, pick a column, and snapshot its surface.
+     * Picking where the water goes happens on a worker (see {@link #planAccumulation}),
+     * and the results are placed on a later tick.
      */
-    @SubscribeEvent
-    public static void accumulateWhenRaining(TickEvent.WorldTickEvent event) {
-        if (event.side.isClient()) return;
-        if (event.phase == TickEvent.Phase.END) return;
-        if (!Config.accumulationEnabled.get()) return;
-        if (!event.world.isRaining()) return;
-
-        TICK_GUARDS.putIfAbsent(event.world.dimension(), new TickGuard.Config(Config.accumulationSmoothness));
-        if (!TICK_GUARDS.get(event.world.dimension()).ready()) return;
-
-        ServerLevel level = (ServerLevel) event.world;
-
-        ChunkUtil.streamLoadedChunks(level)
-            .map(ChunkHolder::getTickingChunk)
-            .filter(Objects::nonNull)
-            .filter(chunk -> Chance.percent(Chance.scaleWithSmoothness(
-                Config.accumulationIntensity.get(), Config.accumulationSmoothness.get()
-            )))
-            .map(chunk -> ChunkUtil.getRandomPosInChunk(level, chunk))
-            .filter(chunkBlockPos -> level.getBiome(chunkBlockPos).value().getPrecipitation() == Biome.Precipitation.RAIN)
-            .filter(chunkBlockPos -> Chance.decimal(getAccumulationChance(level, chunkBlockPos)))
-            .map(chunkBlockPos -> level.getHeightmapPos(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, chunkBlockPos))
-            .filter(waterPos -> !onBlacklist(level, waterPos.below()))
-            .forEach(waterPos -> accumulateAtPosition(level, waterPos));
+    public static void accumulateWhenRaining(WeatherContext context) {
+        ServerLevel level = context.level();
+        BudgetedQueue<LevelChunk> queue = context.accumulationQueue();
+        PlanQueue plans = context.accumulationPlans();
+        ConfigSnapshot config = context.config();
+        if (!config.accumulationEnabled()) {
+            queue.clear();
+            plans.cancel();
+            return;
+        }
+
+        // The wheel turns every tick so every slot gets its turn, but chunks are only queued while it's raining.
+        RegionalWeather weather = context.weather();
+        Stream<LevelChunk> scheduled = context.loadedChunks().sampleScheduled(
+            LoadedChunks.Schedule.ACCUMULATION,
+            config.accumulationWheelSlots(),
+            context.random().get(EvaRandom.Stream.ACCUMULATION),
+            config.accumulationChance()
+        );
+        if (context.isRainingAnywhere()) {
+            int maxQueued = config.accumulationMaxQueued();
+            scheduled.forEach(chunk -> queue.offer(chunk, maxQueued));
+        }
+
+        if (queue.isEmpty() && plans.isEmpty()) return;
+
+        // Place whatever was planned on earlier ticks.
+        BlockWriteBatch batch = new BlockWriteBatch();
+        plans.commit(level, batch, stalePos -> {});
+        batch.apply(level, waterPos -> {
+            context.data().changeHumidity(waterPos, -1000);
+            context.surfaceWater().onBlockChange(waterPos);
+        });
+
+        if (queue.isEmpty()) return;
+
+        ClimateCache climate = context.climate();
+        LoadedChunks loaded = context.loadedChunks();
+        EvaData data = context.data();
+        RandomGenerator random = context.random().get(EvaRandom.Stream.ACCUMULATION);
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+
+        // Chunks can unload (and the weather can change) while they wait, so everything is checked when it comes up.
+        queue.drain(config.accumulationBudgetNanos(), chunk -> {
+            if (!loaded.contains(chunk)) return;
+            if (!weather.isRaining(chunk.getPos().toLong())) return;
+
+            ChunkClimate chunkClimate = climate.get(chunk);
+            if (!chunkClimate.canAccumulate()) return;
+
+            int statues = data.getStatueCount(chunk.getPos().toLong());
+            snapshots.add(ChunkSnapshot.take(chunk, random.nextInt(256), chunkClimate, statues));
+        });
+
+        if (!snapshots.isEmpty()) {
+            plans.submit(snapshots, context.random().split(EvaRandom.Stream.ACCUMULATION), Accumulation::planAccumulation);
+        }
     }
 
     /**
-     * Returns whether the block at the given position is on the configured blacklist.
-     * <p>
-     * Also, recalculates {@link #BLACKLIST_SET} if the underlying config has been modified.
+     * Plans to put water on top of the snapshot's column, which was picked at random when it was taken.
+     * This runs on a worker thread, so it only reads the snapshot.
      */
-    private static boolean onBlacklist(ServerLevel level, BlockPos pos) {
-        // Recalculate accumulation blacklist cache when the underlying list changes.
-        // This may be some React brain rot setting in...
-        if (Config.accumulationEnabled.get().hashCode() != BLACKLIST_HASH) {
-            BLACKLIST_HASH = Config.accumulationBlacklist.get().hashCode();
-            BLACKLIST_SET = Config.accumulationBlacklist.get()
-                .stream()
-                .map(resourceName -> ForgeRegistries.BLOCKS.getValue(new ResourceLocation(resourceName)))
-                .collect(Collectors.toSet());
-        }
+    private static void planAccumulation(ChunkSnapshot snapshot, RandomGenerator random, PlanQueue.Plans out) {
+        if (!snapshot.hasSurface()) return;
+
+        BlockPos surfacePos = snapshot.surfacePos();
+        if (snapshot.climate().precipitation(surfacePos) != Biome.Precipitation.RAIN) return;
+        if (!Chance.decimal(random, getAccumulationChance(snapshot, surfacePos))) return;
+
+        BlockState surface = snapshot.surface();
+        if (onBlacklist(surfacePos, surface)) return;
+
+        out.change(accumulateAtPosition(surfacePos, surface));
+    }
 
-        Block block = level.getBlockState(pos).getBlock();
-        boolean isOnList = BLACKLIST_SET.contains(block);
+    /** Returns whether the given block is on the configured blacklist. */
+    private static boolean onBlacklist(BlockPos pos, BlockState state) {
+        boolean isOnList = AccumulationBlacklist.contains(state);
 
         if (isOnList) {
-            LOGGER.debug("Block {} on blacklist ({})", pos, block);
+            LOGGER.debug("Block {} on blacklist ({})", pos, state.getBlock());
         }
 
         return isOnList;
     }
 
     /**
-     * Accumulate water at the given position (and track it in level data).
+     * Plan accumulating water on top of the given surface block.
+     * The level data is updated for each block that's actually placed once the plan is committed.
      * <p>
      * This method handles placing partial water blocks, if using a water physics mod that supports it.
      */
-    private static void accumulateAtPosition(ServerLevel level, BlockPos pos) {
-        LOGGER.debug("Accumulating at {}", pos);
-        level.setBlockAndUpdate(pos, Blocks.WATER.defaultBlockState());
-        EvaData.get(level).changeHumidity(pos, -1000);
+    private static BlockPlan accumulateAtPosition(BlockPos surfacePos, BlockState surface) {
+        LOGGER.debug("Accumulating at {}", surfacePos.above());
+        return new BlockPlan(surfacePos, surface, surfacePos.above(), Blocks.WATER.defaultBlockState());
     }
 
     /**
@@ -120,8 +159,8 @@ public class Accumulation {
      * This is determined by the "downfall" value of the biome the block resides in.
      * Having a {@link mimickal.minecraft.waterworks.ModBlocks#STATUE} in the chunk also slightly increases the chance.
      */
-    private static double getAccumulationChance(ServerLevel level, BlockPos pos) {
-        double chanceMod = EvaData.get(level).getStatueCount(pos) > 0 ? 0.1 : 0;
-        return level.getBiome(pos).value().getDownfall() + chanceMod;
+    private static double getAccumulationChance(ChunkSnapshot snapshot, BlockPos pos) {
+        double chanceMod = snapshot.statues() > 0 ? 0.1 : 0;
+        return snapshot.climate().downfall(pos) + chanceMod;
     }
 }
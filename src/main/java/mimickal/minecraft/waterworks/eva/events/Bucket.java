@@ -9,53 +9,40 @@ package mimickal.minecraft.waterworks.eva.events;
 
 import com.mojang.logging.LogUtils;
 import mimickal.minecraft.util.Chance;
-import mimickal.minecraft.util.TickGuard;
-import mimickal.minecraft.waterworks.Config;
-import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.EvaRandom;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceKey;
-import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
-import net.minecraft.world.level.Level;
-import net.minecraftforge.event.TickEvent;
-import net.minecraftforge.eventbus.api.SubscribeEvent;
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.random.RandomGenerator;
 
 public class Bucket {
     private static final Logger LOGGER = LogUtils.getLogger();
-    private static final Map<ResourceKey<Level>, TickGuard.Constant> TICK_GUARDS = new HashMap<>();
-    private static final int CHECK_DELAY = 30 * 20; // 5 seconds
     private static final ItemStack SINGLE_BUCKET = new ItemStack(Items.BUCKET, 1);
 
     /**
-     * {@link TickEvent.WorldTickEvent} handler that fills a player's bucket with water if they're holding it
-     * while standing in the rain. This must be a single bucket, not a stack, since water buckets don't stack.
+     * Per-tick handler that fills a player's bucket with water if they're holding it while standing in the rain.
+     * This must be a single bucket, not a stack, since water buckets don't stack. Run by {@link WeatherTick}.
      */
-    @SubscribeEvent
-    public static void fillHeldBuckets(TickEvent.WorldTickEvent event) {
-        if (event.side.isClient()) return;
-        if (event.phase == TickEvent.Phase.END) return;
-        if (!Config.evaporationEnabled.get()) return;
-        if (!event.world.isRaining()) return;
+    public static void fillHeldBuckets(WeatherContext context) {
+        if (!context.config().evaporationEnabled()) return;
+        if (!context.level().isRaining()) return;
+        if (!context.bucketGuard().ready()) return;
 
-        TICK_GUARDS.putIfAbsent(event.world.dimension(), new TickGuard.Constant(CHECK_DELAY));
-        if (!TICK_GUARDS.get(event.world.dimension()).ready()) return;
+        RandomGenerator random = context.random().get(EvaRandom.Stream.BUCKET);
 
-        ServerLevel level = (ServerLevel) event.world;
-
-        level.players()
+        context.level().players()
             .stream()
             .filter(Entity::isInRain) // Access Transformed to be public
+            .filter(player -> context.weather().isRaining(player.blockPosition()))
             .filter(player -> player.isHolding(item -> ItemStack.matches(item, SINGLE_BUCKET)))
-            .filter(player -> Chance.decimal(getBucketFillChance(level, player.getOnPos())))
-            .forEach(player -> replacePlayerHeldBucketWithWaterBucket(level, player));
+            .filter(player -> Chance.decimal(random, getBucketFillChance(context, player.getOnPos())))
+            .forEach(player -> replacePlayerHeldBucketWithWaterBucket(context, player));
     }
 
     /**
@@ -63,16 +50,16 @@ public class Bucket {
      * This is determined by the "downfall" value of the biome the player is standing in.
      * Having a {@link mimickal.minecraft.waterworks.ModBlocks#STATUE} in the chunk also slightly increases the chance.
      */
-    private static double getBucketFillChance(ServerLevel level, BlockPos pos) {
-        double chanceMod = EvaData.get(level).getStatueCount(pos) > 0 ? 0.1 : 0;
-        return level.getBiome(pos).value().getDownfall() + chanceMod;
+    private static double getBucketFillChance(WeatherContext context, BlockPos pos) {
+        double chanceMod = context.data().getStatueCount(pos) > 0 ? 0.1 : 0;
+        return context.climate().downfall(pos) + chanceMod;
     }
 
     /**
      * If a player is holding a bucket, fill the bucket with water.<br>
      * Only does one hand at a time so players double-fisting buckets get a more natural feeling effect.
      */
-    private static void replacePlayerHeldBucketWithWaterBucket(ServerLevel level, ServerPlayer player) {
+    private static void replacePlayerHeldBucketWithWaterBucket(WeatherContext context, ServerPlayer player) {
         if (ItemStack.matches(player.getItemInHand(InteractionHand.MAIN_HAND), SINGLE_BUCKET)) {
             player.setItemInHand(InteractionHand.MAIN_HAND, new ItemStack(Items.WATER_BUCKET));
         } else if (ItemStack.matches(player.getItemInHand(InteractionHand.OFF_HAND), SINGLE_BUCKET)) {
@@ -80,6 +67,6 @@ public class Bucket {
         }
 
         LOGGER.debug("Giving water bucket to {}", player);
-        EvaData.get(level).changeHumidity(player.getOnPos(), -1000);
+        context.data().changeHumidity(player.getOnPos(), -1000);
     }
 }
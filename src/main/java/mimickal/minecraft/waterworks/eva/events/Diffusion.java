@@ -0,0 +1,62 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.events;
+
+import mimickal.minecraft.waterworks.Config;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.EvaWorkers;
+import mimickal.minecraft.waterworks.eva.LoadedHumidity;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import mimickal.minecraft.waterworks.eva.diffusion.DiffusionGrid;
+import mimickal.minecraft.waterworks.eva.diffusion.DiffusionStep;
+
+/**
+ * Spreads humidity between neighboring loaded chunks, so water evaporated over an ocean can end up raining inland.
+ * <p>
+ * Each step copies loaded chunk humidity into a {@link DiffusionGrid}, works out the new values on the shared
+ * {@link EvaWorkers} pool, and then applies the changes back on the main thread. Applying changes stops once
+ * {@link Config#diffusionBudgetMicros} is used up for the tick, and picks back up on the next one.
+ * <p>
+ * Changes are applied as differences rather than new values, so anything that changed humidity while
+ * the step was running (e.g. evaporation) isn't overwritten. This only spreads humidity out. There's no wind.
+ */
+public class Diffusion {
+    /**
+     * Per-tick handler that starts diffusion steps and applies their results. Run by {@link WeatherTick}.
+     * A step still running when its level unloads is cancelled along with the level's {@link WeatherContext}.
+     */
+    public static void diffuseHumidity(WeatherContext context) {
+        ConfigSnapshot config = context.config();
+        if (!config.diffusionEnabled()) return;
+        if (!context.hasSkyLight()) return;
+
+        // Finish what we started before starting anything new.
+        DiffusionStep step = context.diffusionStep();
+        if (step != null) {
+            if (step.commit(context.level(), context.data(), config.diffusionBudgetNanos())) {
+                context.setDiffusionStep(null);
+            }
+            return;
+        }
+
+        if (!context.diffusionGuard().ready()) return;
+
+        EvaData data = context.data();
+        LoadedHumidity loaded = data.getLoadedHumidity();
+        if (loaded.size() == 0) return;
+
+        long[] chunks = loaded.chunks();
+        int[] humidity = new int[chunks.length];
+        data.getHumidity(chunks, humidity);
+
+        DiffusionGrid grid = new DiffusionGrid(chunks, humidity);
+        double rate = config.diffusionRate();
+        context.setDiffusionStep(new DiffusionStep(EvaWorkers.POOL.submit(() -> grid.step(rate))));
+    }
+}
@@ -8,121 +8,149 @@
 package mimickal.minecraft.waterworks.eva.events;
 
 import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.BlockWriteBatch;
+import mimickal.minecraft.util.BudgetedQueue;
 import mimickal.minecraft.util.Chance;
-import mimickal.minecraft.util.ChunkUtil;
-import mimickal.minecraft.util.ListUtil;
-import mimickal.minecraft.util.TickGuard;
 import mimickal.minecraft.waterworks.Config;
-import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.eva.EvaRandom;
+import mimickal.minecraft.waterworks.eva.LoadedChunks;
+import mimickal.minecraft.waterworks.eva.RegionalWeather;
+import mimickal.minecraft.waterworks.eva.SurfaceWater;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import mimickal.minecraft.waterworks.eva.climate.ChunkClimate;
+import mimickal.minecraft.waterworks.eva.climate.ClimateCache;
+import mimickal.minecraft.waterworks.eva.planning.BlockPlan;
+import mimickal.minecraft.waterworks.eva.planning.ChunkSnapshot;
+import mimickal.minecraft.waterworks.eva.planning.PlanQueue;
 import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceKey;
-import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.LevelChunk;
-import net.minecraft.world.level.levelgen.Heightmap;
-import net.minecraftforge.event.TickEvent;
-import net.minecraftforge.eventbus.api.SubscribeEvent;
-import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import java.util.*;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
 
 public class Evaporation {
     private static final Logger LOGGER = LogUtils.getLogger();
-    private static final Map<ResourceKey<Level>, TickGuard.Config> TICK_GUARDS = new HashMap<>();
 
     /**
-     * {@link TickEvent.WorldTickEvent} handler that evaporates water when it's clear.
-     * Evaporation intensity scales with sun intensity.
+     * Per-tick handler that evaporates water when it's clear. Run by {@link WeatherTick}.
+     * Evaporation intensity scales with sun intensity (see {@link WeatherContext#sunScale}).
      * In other words, the closer to noon it is, the faster water evaporates.
      * The minimum time-of-day scaling is applied throughout the night.
      * <p>
      * Water only evaporates when:
-     * <li>It's not raining.</li>
+     * <li>It's not raining (in the chunk's weather cell, with regional rain).</li>
+     * <li>The chunk isn't entirely made of biomes with max downfall.</li>
      * <li>The water is visible to the sky.</li>
+     * <p>
+     * Loaded chunks are spread over a wheel of slots, sized by {@link Config#evaporationSmoothness},
+     * and each tick only looks at one slot's worth. The chunks picked from it are queued up,
+     * then worked through under {@link Config#evaporationBudgetMicros} per tick.
+     * On the main thread we only do the cheap checks, pick a column, and snapshot its surface.
+     * Picking which water evaporates happens on a worker (see {@link #planEvaporation}),
+     * and the results are removed on a later tick.
      */
-    @SubscribeEvent
-    public static void evaporateWhenClear(TickEvent.WorldTickEvent event) {
-        if (event.side.isClient()) return;
-        if (event.phase == TickEvent.Phase.END) return;
-        if (!Config.evaporationEnabled.get()) return;
-        if (event.world.isRaining()) return;
-
-        TICK_GUARDS.putIfAbsent(event.world.dimension(), new TickGuard.Config(Config.evaporationSmoothness));
-        if (!TICK_GUARDS.get(event.world.dimension()).ready()) return;
-
-        ServerLevel level = (ServerLevel) event.world;
-
-        ChunkUtil.streamLoadedChunks(level)
-            .map(ChunkHolder::getTickingChunk)
-            .filter(Objects::nonNull)
-            .filter(chunk -> Chance.percent(Chance.scaleWithSmoothness(
-                Config.evaporationIntensity.get(), Config.evaporationSmoothness.get()
-            )))
-            .filter(chunk -> Chance.decimal(timeOfDayScale(level)))
-            .map(chunk -> findSourceInChunk(level, chunk))
-            .filter(Objects::nonNull)
-            .filter(chunkBlockPos -> Chance.decimal(getEvaporationChance(level, chunkBlockPos)))
-            .forEach(waterPos -> evaporateAtPosition(level, waterPos));
+    public static void evaporateWhenClear(WeatherContext context) {
+        ServerLevel level = context.level();
+        BudgetedQueue<LevelChunk> queue = context.evaporationQueue();
+        PlanQueue plans = context.evaporationPlans();
+        ConfigSnapshot config = context.config();
+        if (!config.evaporationEnabled()) {
+            queue.clear();
+            plans.cancel();
+            return;
+        }
+
+        RandomGenerator random = context.random().get(EvaRandom.Stream.EVAPORATION);
+        RegionalWeather weather = context.weather();
+        SurfaceWater surfaceWater = context.surfaceWater();
+        // The wheel turns every tick so every slot gets its turn, but chunks are only queued while it's clear.
+        Stream<LevelChunk> scheduled = context.loadedChunks().sampleScheduled(
+            LoadedChunks.Schedule.EVAPORATION,
+            config.evaporationWheelSlots(),
+            random,
+            config.evaporationChance()
+        );
+        if (context.isClearAnywhere()) {
+            int maxQueued = config.evaporationMaxQueued();
+            // Dry chunks are cheap to rule out, so don't let them take up room in the queue.
+            scheduled
+                .filter(chunk -> surfaceWater.hasWater(chunk.getPos().toLong()))
+                .forEach(chunk -> queue.offer(chunk, maxQueued));
+        }
+
+        if (queue.isEmpty() && plans.isEmpty()) return;
+
+        // Remove whatever was planned on earlier ticks.
+        // A plan going stale usually means the water moved without us hearing about it, so re-check that column.
+        BlockWriteBatch batch = new BlockWriteBatch();
+        plans.commit(level, batch, surfaceWater::onBlockChange);
+        batch.apply(level, waterPos -> {
+            context.data().changeHumidity(waterPos, 1000);
+            surfaceWater.onBlockChange(waterPos);
+        });
+
+        if (queue.isEmpty()) return;
+
+        ClimateCache climate = context.climate();
+        LoadedChunks loaded = context.loadedChunks();
+        List<ChunkSnapshot> snapshots = new ArrayList<>();
+        double sunScale = context.sunScale();
+
+        // Chunks can unload (and the weather can change) while they wait, so everything is checked when it comes up.
+        queue.drain(config.evaporationBudgetNanos(), chunk -> {
+            if (!loaded.contains(chunk)) return;
+            if (weather.isRaining(chunk.getPos().toLong())) return;
+
+            ChunkClimate chunkClimate = climate.get(chunk);
+            if (!chunkClimate.canEvaporate()) return;
+            if (!Chance.decimal(random, sunScale)) return;
+
+            // We shuffle rather than scan so we don't drill straight down in large bodies of water.
+            int column = surfaceWater.randomColumn(chunk.getPos().toLong(), random);
+            if (column < 0) return;
+            snapshots.add(ChunkSnapshot.take(chunk, column, chunkClimate, 0));
+        });
+
+        if (!snapshots.isEmpty()) {
+            plans.submit(snapshots, context.random().split(EvaRandom.Stream.EVAPORATION), Evaporation::planEvaporation);
+        }
     }
 
     /**
-     * Searches the surface of the given chunk for a water source block.
+     * Plans to evaporate the surface water source in the snapshot's column.
+     * This runs on a worker thread, so it only reads the snapshot.
      * <p>
-     * This returns {@code null} if no source is found.
+     * The column was picked at random out of the chunk's {@link SurfaceWater} map when the snapshot was taken.
      */
-    @Nullable
-    private static BlockPos findSourceInChunk(ServerLevel level, LevelChunk chunk) {
-        return ChunkUtil.blocksInChunkArea(chunk)
-            .collect(ListUtil.toShuffledList()) // Shuffle so we don't drill straight down in large bodies of water
-            .stream()
-            .map(blockPos -> level.getHeightmapPos(Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, blockPos))
-            .map(BlockPos::below)
-            .filter(blockPos -> level.getFluidState(blockPos).isSource())
-            .filter(blockPos -> level.getBlockState(blockPos).is(Blocks.WATER))
-            .findFirst()
-            .orElse(null);
+    private static void planEvaporation(ChunkSnapshot snapshot, RandomGenerator random, PlanQueue.Plans out) {
+        BlockPos waterPos = snapshot.surfacePos();
+        BlockState surface = snapshot.surface();
+        if (!snapshot.hasSurface() || !SurfaceWater.WATER_SOURCE.test(surface)) {
+            // The water map was out of date.
+            out.recheck(waterPos);
+            return;
+        }
+
+        if (!Chance.decimal(random, getEvaporationChance(snapshot, waterPos))) return;
+
+        out.change(evaporateAtPosition(waterPos, surface));
     }
 
     /**
-     * Evaporate water at the given position (and track it in level data).
+     * Plan evaporating water at the given position.
+     * The level data is updated for each block that's actually removed once the plan is committed.
      * <p>
      * This method handles evaporating partial water blocks, if using a water physics mod that supports it.
      */
-    private static void evaporateAtPosition(ServerLevel level, BlockPos pos) {
+    private static BlockPlan evaporateAtPosition(BlockPos pos, BlockState water) {
         LOGGER.debug("Evaporating at {}", pos);
-        level.setBlockAndUpdate(pos, Blocks.AIR.defaultBlockState());
-        EvaData.get(level).changeHumidity(pos, 1000);
-    }
-
-    /**
-     * Returns a scalar that is at its max when the sun is highest, and minimum when the sun disappears.
-     * It remains at that minimum throughout the night.
-     */
-    private static double timeOfDayScale(ServerLevel level) {
-        // One hour = 1000 "units". 0 is 6AM, 1000 is 7AM, 6000 is "noon", 18000 is "midnight" etc...
-        // These are the same units used in the "/time set X" command.
-        // This number continues counting up the next day, so 24000 is 6AM the next day.
-        // The sun first appears on the horizon at 5AM (23000). Note, DOES NOT map to "day" ("day" is 7AM, 1000).
-        // The sun is highest at 12 AM (6000), also mapped to keyword "noon".
-        // The sun disappears under the horizon at 7PM (13000), also mapped to keyword "night".
-
-        double min = 1 - Config.evaporationSunCoefficient.get();
-        long tod = level.getLevelData().getDayTime();
-        tod += 1000;  // Shift so sun appearance is 0 instead of 23000. This just makes the math easier.
-        tod %= 24000; // Always deal with the 0 - 24000 range.
-
-        // We pull this off with a piecewise function.
-        if (min < 1 && 0 <= tod && tod <= 14000) {
-            // During the day, time-of-day corresponds to the angle of the sun in the sky.
-            // Normalize time-of-day to value between 0 and PI so sine can work its magic.
-            return min + ((1 - min) * Math.sin(tod * Math.PI / 14000));
-        } else {
-            // During the night, just return the minimum.
-            return min;
-        }
+        return new BlockPlan(pos, water, pos, Blocks.AIR.defaultBlockState());
     }
 
     /**
@@ -133,7 +161,7 @@ public class Evaporation {
      * (e.g. deserts have a low `downfall` value).
      * We factor this into the evaporation chance calculation so dryer biomes evaporate more frequently.
      */
-    private static double getEvaporationChance(ServerLevel level, BlockPos pos) {
-        return 1 - level.getBiome(pos).value().getDownfall();
+    private static double getEvaporationChance(ChunkSnapshot snapshot, BlockPos pos) {
+        return 1 - snapshot.climate().downfall(pos);
     }
 }
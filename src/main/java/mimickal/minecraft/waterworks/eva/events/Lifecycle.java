@@ -0,0 +1,99 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.events;
+
+import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.RainCollectors;
+import mimickal.minecraft.waterworks.eva.SurfaceWater;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+/**
+ * Keeps {@link EvaData} and each level's {@link WeatherContext} in step with chunks and levels
+ * as they load, save, and unload.
+ */
+public class Lifecycle {
+
+    /** Hands a chunk's saved data to {@link EvaData} when it's read from disk. */
+    @SubscribeEvent
+    public static void onChunkDataLoad(ChunkDataEvent.Load event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        EvaData.get(level).onChunkLoad(event.getChunk(), event.getData());
+    }
+
+    /** Lets {@link EvaData} add its own data to a chunk as it's written to disk. */
+    @SubscribeEvent
+    public static void onChunkDataSave(ChunkDataEvent.Save event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        EvaData.get(level).onChunkSave(event.getChunk(), event.getData());
+    }
+
+    /** Summarizes a chunk's climate, and adds it to the loaded humidity totals, once it's fully loaded. */
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        if (!(event.getChunk() instanceof LevelChunk chunk)) return;
+        WeatherContext context = WeatherContext.get(level);
+        // EvaData reads the chunk's climate to work out its default humidity, so the climate goes first.
+        context.climate().onChunkLoad(chunk);
+        context.data().onFullChunkLoad(chunk);
+        context.loadedChunks().onChunkLoad(chunk);
+        context.surfaceWater().onChunkLoad(chunk);
+        context.rainCollectors().onChunkLoad(chunk);
+    }
+
+    /** Tells {@link EvaData} and the level's {@link WeatherContext} a chunk is no longer loaded. */
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        WeatherContext context = WeatherContext.get(level);
+        long chunkPos = event.getChunk().getPos().toLong();
+        // EvaData may still need this chunk's climate to work out its default humidity, so it goes first.
+        context.data().onChunkUnload(event.getChunk());
+        context.climate().onChunkUnload(chunkPos);
+        context.loadedChunks().onChunkUnload(chunkPos);
+        context.surfaceWater().onChunkUnload(chunkPos);
+        context.rainCollectors().onChunkUnload(chunkPos);
+    }
+
+    /**
+     * Keeps {@link SurfaceWater} and {@link RainCollectors} up to date as blocks change.
+     * Vanilla fires this for nearly every block change, including water flowing, pistons, explosions,
+     * and our own accumulation, so it catches more than the place and break events would.
+     */
+    @SubscribeEvent
+    public static void onBlockChange(BlockEvent.NeighborNotifyEvent event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        WeatherContext context = WeatherContext.get(level);
+        context.surfaceWater().onBlockChange(event.getPos());
+        context.rainCollectors().onBlockChange(event.getPos());
+    }
+
+    /** Sets up the {@link WeatherContext} for a level as it loads. */
+    @SubscribeEvent
+    public static void onLevelLoad(WorldEvent.Load event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        WeatherContext.create(level);
+    }
+
+    /**
+     * Throws away the level's {@link WeatherContext}.
+     * That also gives its {@link EvaData} a chance to finish writing everything out before the level goes away.
+     */
+    @SubscribeEvent
+    public static void onLevelUnload(WorldEvent.Unload event) {
+        if (!(event.getWorld() instanceof ServerLevel level)) return;
+        WeatherContext.dispose(level);
+    }
+}
@@ -8,28 +8,26 @@
 package mimickal.minecraft.waterworks.eva.events;
 
 import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import mimickal.minecraft.util.Chance;
 import mimickal.minecraft.util.ChunkUtil;
-import mimickal.minecraft.util.TickGuard;
 import mimickal.minecraft.waterworks.Config;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
 import mimickal.minecraft.waterworks.eva.EvaData;
-import net.minecraft.core.BlockPos;
-import net.minecraft.resources.ResourceKey;
+import mimickal.minecraft.waterworks.eva.EvaRandom;
+import mimickal.minecraft.waterworks.eva.LoadedHumidity;
+import mimickal.minecraft.waterworks.eva.RegionalWeather;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.world.level.Level;
-import net.minecraftforge.event.TickEvent;
-import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraft.world.level.ChunkPos;
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Objects;
+import java.util.random.RandomGenerator;
 
 public class Rain {
     private static final Logger LOGGER = LogUtils.getLogger();
-    private static final Map<ResourceKey<Level>, TickGuard.Random> TICK_GUARDS = new HashMap<>();
-
-    private static final int RAIN_DELAY_MIN = 10 * 20; // 10 seconds
-    private static final int RAIN_DELAY_MAX = 30 * 20; // 30 seconds
 
     /**
      * This is the {@code a} in a best-fit regression for {@code y = x ^ a} using the following data points:<br>
@@ -44,7 +42,7 @@ public class Rain {
     private static final double RAIN_CHANCE_EXPONENT = 4.23966;
 
     /**
-     * {@link TickEvent.WorldTickEvent} that determines when rainstorms start and controls how long they last.
+     * Per-tick handler that determines when rainstorms start and controls how long they last. Run by {@link WeatherTick}.
      * <p>
      * NOTE: both accumulation and evaporation need to be enabled for this event to take effect.<br>
      * If evaporation was disabled, rain would never start. If accumulation was disabled, rain would never stop.
@@ -52,57 +50,138 @@ public class Rain {
      * Rain probability is based on the average relative humidity of all loaded chunks.
      * "Humidity" is the amount of water evaporated in a chunk. We ultimately express this as a fraction of a chunk's
      * max humidity (See {@link Config#rainChunkHumidityThreshold}).
+     * {@link EvaData} keeps a running total of this, so we don't need to look at every chunk to get it.
      * The higher the relative humidity, the more likely rain is, and vice versa.
      * <p>
      * This does not disable or change any other vanilla rain mechanics.
      * However, if rain is stopped prematurely, it will likely restart the next time this event fires.
+     * <p>
+     * With {@link Config#rainRegional} enabled, this decides rain for each weather cell instead.
+     * See {@link #controlRegionalRain}.
      */
-    @SubscribeEvent
-    public static void controlRain(TickEvent.WorldTickEvent event) {
-        if (event.side.isClient()) return;
-        if (event.phase == TickEvent.Phase.END) return;
-        if (!Config.accumulationEnabled.get()) return;
-        if (!Config.evaporationEnabled.get()) return;
-        if (!Config.rainModEnabled.get()) return;
-        if (!event.world.dimensionType().hasSkyLight()) return;
-
-        TICK_GUARDS.putIfAbsent(event.world.dimension(), new TickGuard.Random(RAIN_DELAY_MIN, RAIN_DELAY_MAX));
-        if (!TICK_GUARDS.get(event.world.dimension()).ready()) return;
-
-        ServerLevel level = (ServerLevel) event.world;
-
-        double avgHumidity = ChunkUtil.streamLoadedChunks(level)
-            .map(chunkHolder -> ChunkUtil.getRandomPosInChunk(level, chunkHolder))
-            .mapToDouble(chunkBlockPos -> calcChunkHumidity(level, chunkBlockPos))
-            .average()
-            .orElse(0);
+    public static void controlRain(WeatherContext context) {
+        ConfigSnapshot config = context.config();
+        if (!config.rainEnabled()) return;
+        if (!context.hasSkyLight()) return;
+        if (!context.rainGuard().ready()) return;
+
+        ServerLevel level = context.level();
+        RandomGenerator random = context.random().get(EvaRandom.Stream.RAIN);
+
+        if (config.rainDebugAggregate()) {
+            long[] loadedChunks = ChunkUtil.streamLoadedChunks(level)
+                .map(ChunkHolder::getFullChunk)
+                .filter(Objects::nonNull)
+                .mapToLong(chunk -> chunk.getPos().toLong())
+                .toArray();
+            context.data().verifyLoadedHumidity(loadedChunks);
+        }
+
+        if (config.rainRegional()) {
+            controlRegionalRain(context, random);
+            return;
+        }
+
+        LoadedHumidity loaded = context.data().getLoadedHumidity();
+        double avgHumidity = calcAverageHumidity(
+            loaded.size(), loaded.humiditySum(), loaded.statueChunks(), config.rainChunkHumidityThreshold()
+        );
 
         LOGGER.debug("Rain check in {} (humidity: {})", name(level), avgHumidity);
 
         if (level.isRaining()) {
             // Subtracting from 1 here "mirrors" the probability on the Y-axis
-            if (Chance.decimal(rainChanceFromHumidity(1 - avgHumidity))) {
+            if (Chance.decimal(random, rainChanceFromHumidity(1 - avgHumidity))) {
                 stopRaining(level);
             }
         } else {
-            if (Chance.decimal(rainChanceFromHumidity(avgHumidity))) {
+            if (Chance.decimal(random, rainChanceFromHumidity(avgHumidity))) {
                 startRaining(level);
             }
         }
     }
 
     /**
-     * Calculates the humidity of the given chunk as a fraction of the configured "max humidity" threshold
+     * Starts and stops rain in each weather cell with loaded chunks, the same way {@link #controlRain}
+     * does for the whole level.
+     * <p>
+     * A cell's humidity is the average across it and its neighbors (see {@link Config#rainRegionalRadius}).
+     * This keeps storms from having hard square edges, and lets a wet cell spill rain over its neighbors.
+     * The humidity totals are kept in a quadtree, so this doesn't scan any chunks.
+     */
+    private static void controlRegionalRain(WeatherContext context, RandomGenerator random) {
+        ServerLevel level = context.level();
+        LoadedHumidity loaded = context.data().getLoadedHumidity();
+        RegionalWeather weather = context.weather();
+        int radius = context.config().rainRegionalRadius();
+        int threshold = context.config().rainChunkHumidityThreshold();
+
+        weather.forgetUnloadedCells(loaded);
+
+        for (LongIterator cells = loaded.cells().keySet().iterator(); cells.hasNext(); ) {
+            long cellKey = cells.nextLong();
+            int cellX = ChunkPos.getX(cellKey);
+            int cellZ = ChunkPos.getZ(cellKey);
+
+            LoadedHumidity.Totals area = loaded.cells(cellX - radius, cellZ - radius, cellX + radius, cellZ + radius);
+            double avgHumidity = calcAverageHumidity(area.size(), area.humiditySum(), area.statueChunks(), threshold);
+
+            if (weather.isCellRaining(cellKey)) {
+                if (Chance.decimal(random, rainChanceFromHumidity(1 - avgHumidity))) {
+                    LOGGER.debug("Rain stop in {} cell [{}, {}]", name(level), cellX, cellZ);
+                    weather.setCellRaining(cellKey, false);
+                }
+            } else {
+                if (Chance.decimal(random, rainChanceFromHumidity(avgHumidity))) {
+                    LOGGER.debug("Rain start in {} cell [{}, {}]", name(level), cellX, cellZ);
+                    weather.setCellRaining(cellKey, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-tick handler that makes vanilla's weather follow {@link RegionalWeather}. Run by {@link WeatherTick}.
+     * <p>
+     * Vanilla only has one weather for the whole level, and that's what players see.
+     * The best we can do is make it rain whenever any player is standing in a raining cell.
+     * Players in clear cells will see rain too, but nothing actually accumulates where they are.
+     */
+    public static void showRegionalRain(WeatherContext context) {
+        ConfigSnapshot config = context.config();
+        if (!config.rainEnabled()) return;
+        if (!config.rainRegional()) return;
+        if (!context.hasSkyLight()) return;
+        if (!context.rainVisualGuard().ready()) return;
+
+        ServerLevel level = context.level();
+        RegionalWeather weather = context.weather();
+
+        boolean playerInRain = level.players()
+            .stream()
+            .anyMatch(player -> weather.isRaining(player.blockPosition()));
+
+        if (playerInRain && !level.isRaining()) {
+            startRaining(level);
+        } else if (!playerInRain && level.isRaining()) {
+            stopRaining(level);
+        }
+    }
+
+    /**
+     * Calculates the average humidity of loaded chunks as a fraction of the configured "max humidity" threshold
      * (See {@link Config#rainChunkHumidityThreshold}).
      * <p>
      * Both of these values are measured in milli-buckets, so simple division gives us the desired value.
      * This resulting value can be above 1.0.
      * <p>
-     * Having a {@link mimickal.minecraft.waterworks.ModBlocks#STATUE} in the chunk also slightly increases humidity.
+     * Having a {@link mimickal.minecraft.waterworks.ModBlocks#STATUE} in a chunk also slightly increases its humidity.
      */
-    private static double calcChunkHumidity(ServerLevel level, BlockPos blockPos) {
-        double humidityMod = EvaData.get(level).getStatueCount(blockPos) > 0 ? 0.1 : 0;
-        return (EvaData.get(level).getHumidity(blockPos) + humidityMod) / Config.rainChunkHumidityThreshold.get();
+    private static double calcAverageHumidity(int chunks, long humiditySum, int statueChunks, int threshold) {
+        if (chunks == 0) return 0;
+
+        double humidityMod = 0.1 * statueChunks;
+        return (humiditySum + humidityMod) / chunks / threshold;
     }
 
     /**
@@ -0,0 +1,157 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.events;
+
+import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.Chance;
+import mimickal.minecraft.waterworks.ConfigSnapshot;
+import mimickal.minecraft.waterworks.eva.EvaData;
+import mimickal.minecraft.waterworks.eva.EvaRandom;
+import mimickal.minecraft.waterworks.eva.RainCollectors;
+import mimickal.minecraft.waterworks.eva.RegionalWeather;
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.LayeredCauldronBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.Fluids;
+import net.minecraftforge.fluids.FluidStack;
+import net.minecraftforge.fluids.FluidUtil;
+import net.minecraftforge.fluids.capability.IFluidHandler;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+public class RainCollection {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /** A full cauldron holds a bucket, and costs a bucket's worth (in mB) of humidity to fill. */
+    private static final int BUCKET_AMOUNT = 1000;
+
+    /**
+     * Per-tick handler that fills rain collectors (see {@link RainCollectors}) in raining chunks. Run by {@link WeatherTick}.
+     * <p>
+     * Each tick visits one slot of the collector wheel, so every chunk with collectors is visited once every
+     * {@link mimickal.minecraft.waterworks.Config#collectorsIntervalTicks} ticks. Rather than rolling for every
+     * collector every tick, a visit rolls once for all the ticks since the last one (see {@link Chance#binomial}).
+     * If the chunk isn't raining when it's visited, that time is skipped.
+     * <p>
+     * A collector only fills when:
+     * <li>It's raining (in the chunk's weather cell, with regional rain).</li>
+     * <li>The collector is in a biome where it rains, and can see the sky.</li>
+     * <li>The chunk has enough humidity left to pay for it.</li>
+     */
+    public static void collectRain(WeatherContext context) {
+        ConfigSnapshot config = context.config();
+        if (!config.collectorsEnabled()) return;
+        if (!context.hasSkyLight()) return;
+
+        // Filling a collector changes its block, which comes back around to the collector map, so copy the slot.
+        List<RainCollectors.Chunk> chunks = List.copyOf(context.rainCollectors().advance(config.collectorsWheelSlots()));
+        if (chunks.isEmpty()) return;
+
+        ServerLevel level = context.level();
+        long gameTime = level.getGameTime();
+        RegionalWeather weather = context.weather();
+
+        for (RainCollectors.Chunk chunk : chunks) {
+            long elapsed = chunk.visit(gameTime);
+            if (!weather.isRaining(chunk.chunkPos())) continue;
+
+            fillChunk(context, chunk, elapsed);
+        }
+    }
+
+    /** Fills the collectors in one chunk with however much rain they caught over {@code elapsed} ticks. */
+    private static void fillChunk(WeatherContext context, RainCollectors.Chunk chunk, long elapsed) {
+        ServerLevel level = context.level();
+        EvaData data = context.data();
+        RandomGenerator random = context.random().get(EvaRandom.Stream.COLLECTOR);
+        double fillChance = context.config().collectorsFillChance();
+        BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+
+        int available = Math.max(data.getHumidity(chunk.chunkPos()), 0);
+        for (long packedPos : chunk.positions()) {
+            if (available <= 0) break;
+
+            pos.set(packedPos);
+            int room = roomFor(level, pos);
+            if (room <= 0) continue;
+            if (context.climate().precipitation(pos) != Biome.Precipitation.RAIN) continue;
+            if (!level.canSeeSky(pos.above())) continue;
+
+            int levels = Chance.binomial(random, elapsed, fillChance, room);
+            if (levels <= 0) continue;
+
+            int collected = fill(level, pos, levels, available);
+            if (collected <= 0) continue;
+
+            data.changeHumidity(chunk.chunkPos(), -collected);
+            available -= collected;
+            LOGGER.debug("Collected {} mB of rain at {}", collected, pos);
+        }
+    }
+
+    /**
+     * How much water (in mB) {@code levels} levels of collected rain are, counting up from empty.
+     * Levels don't divide a bucket evenly, so the cost of going from one level to another is the difference of these.
+     * That way filling a cauldron all the way costs exactly one bucket, no matter how many steps it takes.
+     */
+    private static int amountAtLevel(int levels) {
+        return levels * BUCKET_AMOUNT / LayeredCauldronBlock.MAX_FILL_LEVEL;
+    }
+
+    /** How many more levels of water the collector at the given position can hold. */
+    private static int roomFor(ServerLevel level, BlockPos pos) {
+        BlockState state = level.getBlockState(pos);
+        if (state.is(Blocks.CAULDRON)) {
+            return LayeredCauldronBlock.MAX_FILL_LEVEL;
+        }
+        if (state.is(Blocks.WATER_CAULDRON)) {
+            return LayeredCauldronBlock.MAX_FILL_LEVEL - state.getValue(LayeredCauldronBlock.LEVEL);
+        }
+
+        // Anything else in the tag (e.g. a modded tank) needs to be able to take water through its top.
+        // We roll for up to a cauldron's worth at a time, and let the tank take what it can.
+        boolean hasRoom = FluidUtil.getFluidHandler(level, pos, Direction.UP)
+            .map(handler -> handler.fill(new FluidStack(Fluids.WATER, 1), IFluidHandler.FluidAction.SIMULATE) > 0)
+            .orElse(false);
+        return hasRoom ? LayeredCauldronBlock.MAX_FILL_LEVEL : 0;
+    }
+
+    /**
+     * Adds the given number of levels of water to the collector at the given position,
+     * without using more than {@code available} mB.
+     * @return How much water (in mB) actually went in, which is what the chunk's humidity should pay.
+     */
+    private static int fill(ServerLevel level, BlockPos pos, int levels, int available) {
+        BlockState state = level.getBlockState(pos);
+        if (state.is(Blocks.CAULDRON) || state.is(Blocks.WATER_CAULDRON)) {
+            int current = state.is(Blocks.WATER_CAULDRON) ? state.getValue(LayeredCauldronBlock.LEVEL) : 0;
+            int target = current + levels;
+            while (target > current && amountAtLevel(target) - amountAtLevel(current) > available) {
+                target--;
+            }
+            if (target <= current) return 0;
+
+            level.setBlockAndUpdate(pos, Blocks.WATER_CAULDRON.defaultBlockState()
+                .setValue(LayeredCauldronBlock.LEVEL, target)
+            );
+            return amountAtLevel(target) - amountAtLevel(current);
+        }
+
+        int amount = Math.min(amountAtLevel(levels), available);
+        return FluidUtil.getFluidHandler(level, pos, Direction.UP)
+            .map(handler -> handler.fill(new FluidStack(Fluids.WATER, amount), IFluidHandler.FluidAction.EXECUTE))
+            .orElse(0);
+    }
+}
@@ -0,0 +1,41 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.events;
+
+import mimickal.minecraft.waterworks.eva.WeatherContext;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+/**
+ * The one {@link TickEvent.WorldTickEvent} handler for EVA.
+ * <p>
+ * Looks up the level's {@link WeatherContext} once, works out the per-tick values, and then runs each subsystem
+ * from it in turn. Subsystems keep all their per-level state in the context, so it goes away with the level.
+ */
+public class WeatherTick {
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if (event.side.isClient()) return;
+        if (event.phase == TickEvent.Phase.END) return;
+        if (!(event.world instanceof ServerLevel level)) return;
+
+        WeatherContext context = WeatherContext.get(level);
+        context.startTick();
+        context.data().tick(context.config());
+
+        Accumulation.accumulateWhenRaining(context);
+        Bucket.fillHeldBuckets(context);
+        RainCollection.collectRain(context);
+        Diffusion.diffuseHumidity(context);
+        Evaporation.evaporateWhenClear(context);
+        Rain.controlRain(context);
+        Rain.showRegionalRain(context);
+    }
+}
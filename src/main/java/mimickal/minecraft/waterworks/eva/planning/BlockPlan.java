@@ -0,0 +1,35 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.planning;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+/**
+ * A block change worked out from a {@link ChunkSnapshot}, waiting to be made on the main thread.
+ * <p>
+ * The world keeps going while plans are being made, so a plan remembers the surface block it was based on.
+ * If that block (or the surface height) has changed by the time we get to it, the plan is thrown out.
+ * @param surfacePos The top block of the column this plan was made for.
+ * @param expectedSurface The state {@code surfacePos} had in the snapshot.
+ * @param pos Where to change the block.
+ * @param state What to change it to.
+ */
+public record BlockPlan(BlockPos surfacePos, BlockState expectedSurface, BlockPos pos, BlockState state) {
+
+    /** Whether the column still looks the way it did in the snapshot. Doesn't load chunks. */
+    public boolean stillValid(ServerLevel level) {
+        LevelChunk chunk = level.getChunkSource().getChunkNow(this.surfacePos.getX() >> 4, this.surfacePos.getZ() >> 4);
+        if (chunk == null) return false;
+
+        int surfaceY = chunk.getHeight(ChunkSnapshot.HEIGHTMAP, this.surfacePos.getX() & 15, this.surfacePos.getZ() & 15);
+        return surfaceY == this.surfacePos.getY() && chunk.getBlockState(this.surfacePos) == this.expectedSurface;
+    }
+}
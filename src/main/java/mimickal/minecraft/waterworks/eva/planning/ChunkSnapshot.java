@@ -0,0 +1,83 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.planning;
+
+import mimickal.minecraft.waterworks.eva.climate.ChunkClimate;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+/**
+ * A read-only copy of the parts of a chunk we need to plan accumulation or evaporation in one of its columns.
+ * <p>
+ * Chunks can't be read safely off the main thread, so the column is picked on the main thread and we copy its
+ * surface (the top block, going by {@link #HEIGHTMAP}) along with anything else planning needs,
+ * then hand the copy to a worker. That's one heightmap read and one block read per chunk, same as picking and
+ * checking the column right there. Nothing in here changes after it's taken, so any thread can read it.
+ */
+public class ChunkSnapshot {
+    public static final Heightmap.Types HEIGHTMAP = Heightmap.Types.MOTION_BLOCKING_NO_LEAVES;
+
+    private final ChunkPos pos;
+    private final boolean hasSurface;
+    private final BlockPos surfacePos;
+    private final BlockState surface;
+    private final ChunkClimate climate;
+    private final int statues;
+
+    /**
+     * Copies the surface of one column of the given chunk. Must be called on the main thread.
+     * @param column The column's index, {@code (z << 4) | x}.
+     */
+    public static ChunkSnapshot take(LevelChunk chunk, int column, ChunkClimate climate, int statues) {
+        return new ChunkSnapshot(chunk, column, climate, statues);
+    }
+
+    private ChunkSnapshot(LevelChunk chunk, int column, ChunkClimate climate, int statues) {
+        this.pos = chunk.getPos();
+        this.climate = climate;
+        this.statues = statues;
+
+        int x = column & 15;
+        int z = column >> 4;
+        int y = chunk.getHeight(HEIGHTMAP, x, z);
+        this.hasSurface = y >= chunk.getMinBuildHeight();
+        this.surfacePos = new BlockPos(this.pos.getBlockX(x), y, this.pos.getBlockZ(z));
+        this.surface = chunk.getBlockState(this.surfacePos);
+    }
+
+    public ChunkPos pos() {
+        return this.pos;
+    }
+
+    public ChunkClimate climate() {
+        return this.climate;
+    }
+
+    /** Number of statues in the chunk. */
+    public int statues() {
+        return this.statues;
+    }
+
+    /** Whether the column has any blocks in it at all (by the heightmap). */
+    public boolean hasSurface() {
+        return this.hasSurface;
+    }
+
+    /** The top block of the column. */
+    public BlockState surface() {
+        return this.surface;
+    }
+
+    /** The position of the top block of the column. */
+    public BlockPos surfacePos() {
+        return this.surfacePos;
+    }
+}
@@ -0,0 +1,131 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.planning;
+
+import com.mojang.logging.LogUtils;
+import mimickal.minecraft.util.BlockWriteBatch;
+import mimickal.minecraft.waterworks.eva.EvaWorkers;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * Plans block changes on worker threads, then hands them back to the main thread to actually make.
+ * <p>
+ * Working out <i>where</i> to accumulate or evaporate (random columns, biome checks, the blacklist)
+ * only needs to read the world, so it runs on a worker against {@link ChunkSnapshot}s.
+ * Finished plans are picked up by {@link #commit} on a later tick, in the order they were submitted,
+ * and each one is checked against the world before it's made (see {@link BlockPlan#stillValid}).
+ * <p>
+ * Each handler keeps one of these per level. It's only meant to be touched from the main thread.
+ */
+public class PlanQueue {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    /** Works out what to do with a single chunk. Runs on a worker thread, so it must only read its arguments. */
+    @FunctionalInterface
+    public interface Planner {
+        void plan(ChunkSnapshot snapshot, RandomGenerator random, Plans out);
+    }
+
+    /** Everything planned from one batch of snapshots. */
+    public static class Plans {
+        private final List<BlockPlan> changes = new ArrayList<>();
+        private final List<BlockPos> rechecks = new ArrayList<>();
+
+        public void change(BlockPlan plan) {
+            this.changes.add(plan);
+        }
+
+        /** Asks the main thread to take another look at a position that didn't match what we expected. */
+        public void recheck(BlockPos pos) {
+            this.rechecks.add(pos);
+        }
+    }
+
+    private final ArrayDeque<CompletableFuture<Plans>> pending = new ArrayDeque<>();
+    private long committed = 0;
+    private long stale = 0;
+
+    /**
+     * Starts planning for the given snapshots on a worker.
+     * @param random Used only by this batch's worker. Take it from {@link mimickal.minecraft.waterworks.eva.EvaRandom#split}.
+     */
+    public void submit(List<ChunkSnapshot> snapshots, RandomGenerator random, Planner planner) {
+        this.pending.addLast(CompletableFuture.supplyAsync(() -> {
+            Plans plans = new Plans();
+            for (ChunkSnapshot snapshot : snapshots) {
+                planner.plan(snapshot, random, plans);
+            }
+            return plans;
+        }, EvaWorkers.POOL));
+    }
+
+    /**
+     * Queues every finished plan that still fits the world into the given batch.
+     * Stops at the first batch of plans that isn't finished yet, so plans are always made in order.
+     * @param onStale Called with the surface position of each plan that was thrown out, and each recheck request.
+     */
+    public void commit(ServerLevel level, BlockWriteBatch batch, Consumer<BlockPos> onStale) {
+        while (!this.pending.isEmpty() && this.pending.peekFirst().isDone()) {
+            Plans plans;
+            try {
+                plans = this.pending.pollFirst().join();
+            } catch (CompletionException | CancellationException e) {
+                LOGGER.error("Failed to plan block changes", e);
+                continue;
+            }
+
+            for (BlockPlan plan : plans.changes) {
+                if (plan.stillValid(level)) {
+                    batch.set(plan.pos(), plan.state());
+                    this.committed++;
+                } else {
+                    LOGGER.debug("Dropping stale plan at {}", plan.pos());
+                    onStale.accept(plan.surfacePos());
+                    this.stale++;
+                }
+            }
+            plans.rechecks.forEach(onStale);
+        }
+    }
+
+    /** Throws away everything that hasn't been committed yet. */
+    public void cancel() {
+        this.pending.forEach(plans -> plans.cancel(false));
+        this.pending.clear();
+    }
+
+    public boolean isEmpty() {
+        return this.pending.isEmpty();
+    }
+
+    /** Number of batches still being planned (or waiting to be committed). */
+    public int pending() {
+        return this.pending.size();
+    }
+
+    /** Total plans that were still valid and made it into a batch. */
+    public long committed() {
+        return this.committed;
+    }
+
+    /** Total plans thrown out because the world changed after the snapshot. */
+    public long stale() {
+        return this.stale;
+    }
+}
@@ -0,0 +1,179 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import mimickal.minecraft.waterworks.Waterworks;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import java.util.function.LongToIntFunction;
+
+/**
+ * Stores EVA data inside each chunk's own saved data.
+ * <p>
+ * Only loaded chunks are kept in memory, so memory scales with loaded chunks instead of explored chunks.
+ * Saving piggybacks on vanilla's chunk saving. Since a chunk's data on disk always wins when it loads,
+ * changes made to a chunk that isn't loaded are discarded.
+ */
+public class ChunkAttachedStore implements EvaStore {
+    private static final String HUMIDITY_TAG_NAME = "humidity";
+    private static final String STATUE_TAG_NAME = "statue";
+
+    private final ServerLevel level;
+    private final ChunkValueMap humidity = new ChunkValueMap(ChunkValueMap.MISSING);
+    private final ChunkValueMap statues = new ChunkValueMap(0);
+
+    /** Chunks that unloaded with unsaved changes. We hold onto their data until vanilla saves them. */
+    private final LongSet pendingSave = new LongOpenHashSet();
+    /**
+     * Chunks that were changed while they weren't loaded (e.g. by a command, or a diffusion step that outlived them).
+     * Those changes can never be saved, so they're thrown away on the next save, or when the chunk loads.
+     */
+    private final LongSet unloadedWrites = new LongOpenHashSet();
+
+    public ChunkAttachedStore(ServerLevel level) {
+        this.level = level;
+    }
+
+    @Override
+    public int getHumidity(long chunkPos) {
+        return this.humidity.get(chunkPos);
+    }
+
+    @Override
+    public void setHumidity(long chunkPos, int amount) {
+        this.humidity.put(chunkPos, amount);
+        markUnsaved(chunkPos);
+    }
+
+    @Override
+    public int changeHumidity(long chunkPos, int delta, LongToIntFunction initial) {
+        int amount = this.humidity.change(chunkPos, delta, initial);
+        markUnsaved(chunkPos);
+        return amount;
+    }
+
+    @Override
+    public void removeHumidity(long chunkPos) {
+        if (this.humidity.remove(chunkPos) != ChunkValueMap.MISSING) {
+            markUnsaved(chunkPos);
+        }
+    }
+
+    @Override
+    public void clearHumidity() {
+        // Chunks on disk keep their old value until they're loaded and changed.
+        // There is no way to reach them without loading every chunk in the level.
+        this.humidity.clear();
+    }
+
+    @Override
+    public int getStatueCount(long chunkPos) {
+        return this.statues.get(chunkPos);
+    }
+
+    @Override
+    public void setStatueCount(long chunkPos, int count) {
+        if (count == 0) {
+            this.statues.remove(chunkPos);
+        } else {
+            this.statues.put(chunkPos, count);
+        }
+        markUnsaved(chunkPos);
+    }
+
+    /** Vanilla saves chunks on its own, so this only throws away changes made to chunks that aren't loaded. */
+    @Override
+    public void save() {
+        for (LongIterator chunks = this.unloadedWrites.iterator(); chunks.hasNext(); ) {
+            long chunkPos = chunks.nextLong();
+            if (!isLoaded(chunkPos) && !this.pendingSave.contains(chunkPos)) {
+                forget(chunkPos);
+            }
+        }
+        this.unloadedWrites.clear();
+    }
+
+    /** The chunk's data on disk always wins, so anything we were holding for it is dropped first. */
+    @Override
+    public void onChunkLoad(long chunkPos, CompoundTag chunkTag) {
+        this.pendingSave.remove(chunkPos);
+        this.unloadedWrites.remove(chunkPos);
+        forget(chunkPos);
+        if (!chunkTag.contains(Waterworks.MOD_NAME, Tag.TAG_COMPOUND)) return;
+
+        CompoundTag tag = chunkTag.getCompound(Waterworks.MOD_NAME);
+        if (tag.contains(HUMIDITY_TAG_NAME, Tag.TAG_INT)) {
+            this.humidity.put(chunkPos, tag.getInt(HUMIDITY_TAG_NAME));
+        }
+        if (tag.contains(STATUE_TAG_NAME, Tag.TAG_INT)) {
+            this.statues.put(chunkPos, tag.getInt(STATUE_TAG_NAME));
+        }
+    }
+
+    @Override
+    public void onChunkSave(long chunkPos, CompoundTag chunkTag) {
+        int humidity = this.humidity.get(chunkPos);
+        int statues = this.statues.get(chunkPos);
+
+        if (humidity != ChunkValueMap.MISSING || statues != 0) {
+            CompoundTag tag = new CompoundTag();
+            if (humidity != ChunkValueMap.MISSING) {
+                tag.putInt(HUMIDITY_TAG_NAME, humidity);
+            }
+            if (statues != 0) {
+                tag.putInt(STATUE_TAG_NAME, statues);
+            }
+            chunkTag.put(Waterworks.MOD_NAME, tag);
+        }
+
+        if (this.pendingSave.remove(chunkPos)) {
+            forget(chunkPos);
+        }
+    }
+
+    @Override
+    public void onChunkUnload(ChunkAccess chunk) {
+        long chunkPos = chunk.getPos().toLong();
+        if (chunk.isUnsaved()) {
+            // Vanilla saves the chunk after firing the unload event, so we still need this data.
+            this.pendingSave.add(chunkPos);
+        } else {
+            forget(chunkPos);
+        }
+    }
+
+    private void forget(long chunkPos) {
+        this.humidity.remove(chunkPos);
+        this.statues.remove(chunkPos);
+    }
+
+    /**
+     * Tells vanilla this chunk needs to be saved, so our data gets written with it.
+     * If the chunk isn't loaded, the change has nowhere to go, so we remember to throw it away.
+     */
+    private void markUnsaved(long chunkPos) {
+        LevelChunk chunk = this.level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos));
+        if (chunk != null) {
+            chunk.setUnsaved(true);
+        } else if (!this.pendingSave.contains(chunkPos)) {
+            this.unloadedWrites.add(chunkPos);
+        }
+    }
+
+    private boolean isLoaded(long chunkPos) {
+        return this.level.getChunkSource().getChunkNow(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos)) != null;
+    }
+}
@@ -0,0 +1,138 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMaps;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.ChunkPos;
+import org.slf4j.Logger;
+
+import java.util.function.LongToIntFunction;
+
+/**
+ * Maps numerical values by chunk, keyed on {@link ChunkPos#toLong()}.
+ * Primitive keys and values mean lookups don't allocate a {@link ChunkPos} or box an {@link Integer}.
+ */
+public class ChunkValueMap extends Long2IntOpenHashMap {
+    /** Returned by {@link #get(long)} for chunks with no entry in a map that has no sensible default. */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String CHUNKS_TAG_NAME = "chunks";
+    private static final String AMOUNTS_TAG_NAME = "amounts";
+    private static final String LEGACY_X = "x";
+    private static final String LEGACY_Z = "z";
+    private static final String LEGACY_AMOUNT = "amt";
+
+    public ChunkValueMap(int defaultValue) {
+        super();
+        this.defaultReturnValue(defaultValue);
+    }
+
+    /**
+     * Adds to a chunk's value. This is a single lookup for chunks that already have an entry,
+     * instead of the separate get and put it would otherwise take.
+     * @param initial The value a chunk with no entry starts from. Only called for those chunks.
+     * @return The chunk's new value.
+     */
+    public int change(long chunkPos, int delta, LongToIntFunction initial) {
+        if (delta == 0) {
+            int amount = this.get(chunkPos);
+            return amount != this.defaultReturnValue() ? amount : initial.applyAsInt(chunkPos);
+        }
+
+        int old = this.addTo(chunkPos, delta);
+        if (old != this.defaultReturnValue()) {
+            return old + delta;
+        }
+
+        // addTo added to the default return value, so fix the new entry up.
+        int amount = initial.applyAsInt(chunkPos) + delta;
+        this.put(chunkPos, amount);
+        return amount;
+    }
+
+    /** Takes a point-in-time copy of this map's entries. See {@link Columns}. */
+    public Columns columns() {
+        long[] chunks = new long[this.size()];
+        int[] amounts = new int[this.size()];
+
+        int i = 0;
+        for (Long2IntMap.Entry entry : Long2IntMaps.fastIterable(this)) {
+            chunks[i] = entry.getLongKey();
+            amounts[i] = entry.getIntValue();
+            i++;
+        }
+
+        return new Columns(chunks, amounts);
+    }
+
+    /** Copies every entry of the given {@link Columns} into this map. */
+    public void putAll(Columns columns) {
+        for (int i = 0; i < columns.chunks.length; i++) {
+            this.put(columns.chunks[i], columns.amounts[i]);
+        }
+    }
+
+    /** Deserializes a tag written by {@link Columns#serialize()} into this map. */
+    public void deserialize(CompoundTag tag) {
+        long[] chunks = tag.getLongArray(CHUNKS_TAG_NAME);
+        int[] amounts = tag.getIntArray(AMOUNTS_TAG_NAME);
+
+        if (chunks.length != amounts.length) {
+            LOGGER.warn("Mismatched chunk map data ({} chunks, {} amounts). Extra entries will be dropped.",
+                chunks.length, amounts.length
+            );
+        }
+
+        int size = Math.min(chunks.length, amounts.length);
+        for (int i = 0; i < size; i++) {
+            this.put(chunks[i], amounts[i]);
+        }
+    }
+
+    /**
+     * Deserializes the old list-of-compounds layout into this map.
+     * Nothing writes this layout anymore, but we still need to read it to migrate old saves.
+     */
+    public void deserializeLegacy(ListTag listTag) {
+        for (Tag tag : listTag) {
+            CompoundTag entry = (CompoundTag) tag;
+            this.put(ChunkPos.asLong(
+                entry.getInt(LEGACY_X),
+                entry.getInt(LEGACY_Z)
+            ),  entry.getInt(LEGACY_AMOUNT));
+        }
+    }
+
+    /**
+     * A copy of a chunk map's entries as two packed parallel arrays: one of chunk keys, and one of their values.
+     * This is cheap to take, and nothing else holds a reference to the arrays, so it's safe to hand to another thread.
+     */
+    public record Columns(long[] chunks, int[] amounts) {
+        public boolean isEmpty() {
+            return this.chunks.length == 0;
+        }
+
+        /**
+         * Serializes these columns as a {@link net.minecraft.nbt.LongArrayTag} and an
+         * {@link net.minecraft.nbt.IntArrayTag}. This avoids a tag object (and a set of repeated key names) per entry.
+         */
+        public CompoundTag serialize() {
+            CompoundTag tag = new CompoundTag();
+            tag.putLongArray(CHUNKS_TAG_NAME, this.chunks);
+            tag.putIntArray(AMOUNTS_TAG_NAME, this.amounts);
+            return tag;
+        }
+    }
+}
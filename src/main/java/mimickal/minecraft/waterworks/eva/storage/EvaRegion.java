@@ -0,0 +1,93 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * A region-sized (32x32 chunk, like vanilla's {@code .mca} files) shard of EVA data.
+ * <p>
+ * Each region is saved to its own file and tracks its own dirty flag,
+ * so saving only needs to rewrite the regions that actually changed.
+ */
+public class EvaRegion {
+    /** Number of bits to shift a chunk coordinate by to get its region coordinate. */
+    public static final int SHIFT = 5;
+
+    private static final String VERSION_TAG_NAME = "version";
+    private static final String HUMIDITY_TAG_NAME = "humidity";
+    private static final String STATUE_TAG_NAME = "statue";
+
+    /**
+     * Region save format versions. Regions saved before versioning existed read as 0,
+     * and stored each map as a list of per-chunk compound tags.
+     */
+    private static final int FORMAT_COLUMNAR = 2;
+
+    /** A measure of water currently "evaporated" per-chunk. */
+    public final ChunkValueMap humidity = new ChunkValueMap(ChunkValueMap.MISSING);
+    /** A count of leviathan statues places per-chunk. This cache avoids needing to search the whole chunk. */
+    public final ChunkValueMap statues = new ChunkValueMap(0);
+
+    private boolean dirty = false;
+
+    /** Returns the packed key of the region the given packed {@link ChunkPos#toLong()} resides in. */
+    public static long regionKey(long chunkPos) {
+        return ChunkPos.asLong(ChunkPos.getX(chunkPos) >> SHIFT, ChunkPos.getZ(chunkPos) >> SHIFT);
+    }
+
+    /** Flags this region as needing to be written out next time the game saves. */
+    public void setDirty() {
+        this.dirty = true;
+    }
+
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    /** Takes a copy of this region to be saved, and clears its dirty flag. */
+    public Snapshot snapshot() {
+        this.dirty = false;
+        return new Snapshot(this.humidity.columns(), this.statues.columns());
+    }
+
+    /** Loads a copy taken by {@link #snapshot()} into this region. */
+    public void load(Snapshot snapshot) {
+        this.humidity.putAll(snapshot.humidity);
+        this.statues.putAll(snapshot.statues);
+    }
+
+    /** Deserializes a tag written by {@link Snapshot#serialize()} into this region. */
+    public void load(CompoundTag tag) {
+        if (tag.getInt(VERSION_TAG_NAME) >= FORMAT_COLUMNAR) {
+            this.humidity.deserialize(tag.getCompound(HUMIDITY_TAG_NAME));
+            this.statues.deserialize(tag.getCompound(STATUE_TAG_NAME));
+        } else {
+            this.humidity.deserializeLegacy(tag.getList(HUMIDITY_TAG_NAME, Tag.TAG_COMPOUND));
+            this.statues.deserializeLegacy(tag.getList(STATUE_TAG_NAME, Tag.TAG_COMPOUND));
+        }
+    }
+
+    /** A point-in-time copy of a region. Safe to serialize on another thread. */
+    public record Snapshot(ChunkValueMap.Columns humidity, ChunkValueMap.Columns statues) {
+        /** Returns whether this region held no data worth writing to disk. */
+        public boolean isEmpty() {
+            return this.humidity.isEmpty() && this.statues.isEmpty();
+        }
+
+        public CompoundTag serialize() {
+            CompoundTag tag = new CompoundTag();
+            tag.putInt(VERSION_TAG_NAME, FORMAT_COLUMNAR);
+            tag.put(HUMIDITY_TAG_NAME, this.humidity.serialize());
+            tag.put(STATUE_TAG_NAME, this.statues.serialize());
+            return tag;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkAccess;
+
+import java.util.function.LongToIntFunction;
+
+/**
+ * Where EVA data actually lives.
+ * <p>
+ * {@link mimickal.minecraft.waterworks.eva.EvaData} is the front end everything else talks to.
+ * It delegates storage to one of these, picked by {@link mimickal.minecraft.waterworks.Config#storageMode}.
+ * All chunk positions are packed {@link ChunkPos#toLong()} values.
+ */
+public interface EvaStore {
+    /** Returns the stored humidity for the chunk, or {@link ChunkValueMap#MISSING} if there is none. */
+    int getHumidity(long chunkPos);
+
+    /**
+     * Fills {@code amounts} with the stored humidity of each chunk in {@code chunkPositions},
+     * or {@link ChunkValueMap#MISSING} for chunks with none.
+     */
+    default void getHumidity(long[] chunkPositions, int[] amounts) {
+        for (int i = 0; i < chunkPositions.length; i++) {
+            amounts[i] = getHumidity(chunkPositions[i]);
+        }
+    }
+
+    void setHumidity(long chunkPos, int amount);
+
+    /**
+     * Adds to the chunk's humidity in one step.
+     * @param initial The humidity a chunk with nothing stored starts from. Only called for those chunks.
+     * @return The chunk's new humidity, or {@link ChunkValueMap#MISSING} if the store couldn't keep the change
+     *         (e.g. its backing file couldn't be opened).
+     */
+    default int changeHumidity(long chunkPos, int delta, LongToIntFunction initial) {
+        int stored = getHumidity(chunkPos);
+        int amount = (stored != ChunkValueMap.MISSING ? stored : initial.applyAsInt(chunkPos)) + delta;
+        setHumidity(chunkPos, amount);
+        return amount;
+    }
+
+    void removeHumidity(long chunkPos);
+
+    /** Removes humidity for every chunk in the level. */
+    void clearHumidity();
+
+    int getStatueCount(long chunkPos);
+
+    /** Fills {@code counts} with the statue count of each chunk in {@code chunkPositions}. */
+    default void getStatueCount(long[] chunkPositions, int[] counts) {
+        for (int i = 0; i < chunkPositions.length; i++) {
+            counts[i] = getStatueCount(chunkPositions[i]);
+        }
+    }
+
+    /** Sets the statue count for the chunk. A count of 0 removes the entry. */
+    void setStatueCount(long chunkPos, int count);
+
+    /** Called once per level tick, for anything that needs to happen on a timer. */
+    default void tick() {}
+
+    /** Called when the game saves. */
+    void save();
+
+    /** Called when the level is unloaded. Anything not yet written to disk must be written before this returns. */
+    default void close() {}
+
+    /** Called when a chunk's saved data is read from disk. */
+    default void onChunkLoad(long chunkPos, CompoundTag chunkTag) {}
+
+    /** Called when a chunk's data is being written to disk. */
+    default void onChunkSave(long chunkPos, CompoundTag chunkTag) {}
+
+    /** Called when a chunk is unloaded. Vanilla saves the chunk <i>after</i> this. */
+    default void onChunkUnload(ChunkAccess chunk) {}
+}
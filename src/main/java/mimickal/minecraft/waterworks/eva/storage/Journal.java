@@ -0,0 +1,165 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only log of changes made to a {@link RegionStorage}.
+ * <p>
+ * Changes are buffered as compact fixed-size binary records, and appended to the log file in batches
+ * on a background thread. Replaying the log on top of the last saved regions recovers every change that made it
+ * into a batch. Batches go out once they fill up, or once a second has passed (checked on every append and every
+ * {@link #tick}), so a crash loses at most about a second of changes without needing to rewrite whole regions.
+ * <p>
+ * Records hold the new value rather than the change, so replaying a record that was already saved is harmless.
+ */
+class Journal {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    static final byte SET_HUMIDITY = 0;
+    static final byte REMOVE_HUMIDITY = 1;
+    static final byte SET_STATUES = 2;
+    static final byte CLEAR_HUMIDITY = 3;
+
+    /** Type (byte) + chunk position (long) + value (int). */
+    private static final int RECORD_SIZE = Byte.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int BATCH_RECORDS = 1024;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path file;
+    private final Executor writer;
+
+    private ByteBuffer batch = newBatch();
+    private long lastFlushNanos = System.nanoTime();
+    private int recordsSinceTruncate = 0;
+
+    /**
+     * @param file The log file.
+     * @param writer Where batches get written. Must run tasks one at a time, in order.
+     */
+    Journal(Path file, Executor writer) {
+        this.file = file;
+        this.writer = writer;
+    }
+
+    /** Records a change. */
+    void append(byte type, long chunkPos, int value) {
+        this.batch.put(type).putLong(chunkPos).putInt(value);
+        this.recordsSinceTruncate++;
+
+        if (!this.batch.hasRemaining() || System.nanoTime() - this.lastFlushNanos > FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes buffered records once they've waited long enough, even if nothing new is being recorded.
+     * Call this every tick, so a burst of changes followed by quiet doesn't sit in memory until the next save.
+     */
+    void tick() {
+        if (System.nanoTime() - this.lastFlushNanos > FLUSH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    /** Queues all buffered records to be appended to the log file. */
+    void flush() {
+        this.lastFlushNanos = System.nanoTime();
+        if (this.batch.position() == 0) return;
+
+        ByteBuffer full = this.batch.flip();
+        this.batch = newBatch();
+        this.writer.execute(() -> write(full));
+    }
+
+    /**
+     * Throws away every record, buffered or written.
+     * Only call this once everything recorded so far has been queued to be saved some other way
+     * (on the same writer, so the log is cleared after that save lands).
+     */
+    void truncate() {
+        this.batch.clear();
+        this.recordsSinceTruncate = 0;
+        this.writer.execute(() -> {
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (IOException e) {
+                LOGGER.error("Could not truncate EVA journal {}", this.file, e);
+            }
+        });
+    }
+
+    /** Number of records since the log was last truncated. */
+    int size() {
+        return this.recordsSinceTruncate;
+    }
+
+    /**
+     * Reads every complete record in a log file, in order.
+     * A partial record at the end (e.g. from a crash mid-write) is skipped.
+     */
+    static void replay(Path file, Replayer replayer) {
+        if (!Files.exists(file)) return;
+
+        ByteBuffer records;
+        try {
+            records = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            LOGGER.error("Could not read EVA journal {}", file, e);
+            return;
+        }
+
+        int count = 0;
+        while (records.remaining() >= RECORD_SIZE) {
+            replayer.apply(records.get(), records.getLong(), records.getInt());
+            count++;
+        }
+
+        if (records.hasRemaining()) {
+            LOGGER.warn("Skipping {} trailing byte(s) of incomplete record in EVA journal {}", records.remaining(), file);
+        }
+        LOGGER.info("Replayed {} change(s) from EVA journal {}", count, file);
+    }
+
+    /** Runs on {@link #writer}. */
+    private void write(ByteBuffer records) {
+        try {
+            Files.createDirectories(this.file.getParent());
+            try (FileChannel channel = FileChannel.open(
+                this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+            )) {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not append to EVA journal {}", this.file, e);
+        }
+    }
+
+    private static ByteBuffer newBatch() {
+        return ByteBuffer.allocate(BATCH_RECORDS * RECORD_SIZE);
+    }
+
+    @FunctionalInterface
+    interface Replayer {
+        void apply(byte type, long chunkPos, int value);
+    }
+}
@@ -0,0 +1,230 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Stores EVA data in memory-mapped region files, off the Java heap.
+ * <p>
+ * Each file covers a 32x32 chunk region, and is laid out as two fixed-size pages of ints indexed by chunk coordinate:
+ * one for humidity and one for statue counts. Reads and writes go straight to the mapped pages, so they're O(1) and
+ * never allocate. The OS writes dirty pages back to disk on its own, so saving is essentially free.
+ */
+public class MappedStore implements EvaStore {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String FILE_PREFIX = "r.";
+    private static final String FILE_SUFFIX = ".map";
+
+    /** Number of chunks along one side of a region. */
+    private static final int REGION_WIDTH = 1 << EvaRegion.SHIFT;
+    private static final int CHUNKS_PER_REGION = REGION_WIDTH * REGION_WIDTH;
+    private static final int HUMIDITY_OFFSET = 0;
+    private static final int STATUE_OFFSET = CHUNKS_PER_REGION;
+    private static final int FILE_SIZE = 2 * CHUNKS_PER_REGION * Integer.BYTES;
+
+    /** Mappings count against the OS's map limit, so only keep this many open when not configured otherwise. */
+    private static final int DEFAULT_MAX_MAPPED_REGIONS = 4096;
+
+    private final Path directory;
+    private final int maxMappedRegions;
+    /** Mapped regions, in least to most recently used order. */
+    private final Long2ObjectLinkedOpenHashMap<Page> pages = new Long2ObjectLinkedOpenHashMap<>();
+    /**
+     * Regions we know have no file, so reading them doesn't hit the file system every time.
+     * This is only a cache, so it's simply emptied once it holds {@link #maxMappedRegions} regions.
+     */
+    private final LongSet absentRegions = new LongOpenHashSet();
+
+    public MappedStore(Path directory, int maxMappedRegions) {
+        this.directory = directory;
+        this.maxMappedRegions = maxMappedRegions > 0 ? maxMappedRegions : DEFAULT_MAX_MAPPED_REGIONS;
+    }
+
+    @Override
+    public int getHumidity(long chunkPos) {
+        Page page = page(chunkPos, false);
+        return page != null ? page.ints.get(HUMIDITY_OFFSET + index(chunkPos)) : ChunkValueMap.MISSING;
+    }
+
+    @Override
+    public void setHumidity(long chunkPos, int amount) {
+        Page page = page(chunkPos, true);
+        if (page != null) {
+            page.ints.put(HUMIDITY_OFFSET + index(chunkPos), amount);
+        }
+    }
+
+    @Override
+    public int changeHumidity(long chunkPos, int delta, LongToIntFunction initial) {
+        Page page = page(chunkPos, true);
+        if (page == null) return ChunkValueMap.MISSING;
+
+        int index = HUMIDITY_OFFSET + index(chunkPos);
+        int stored = page.ints.get(index);
+        int amount = (stored != ChunkValueMap.MISSING ? stored : initial.applyAsInt(chunkPos)) + delta;
+        page.ints.put(index, amount);
+        return amount;
+    }
+
+    @Override
+    public void removeHumidity(long chunkPos) {
+        Page page = page(chunkPos, false);
+        if (page != null) {
+            page.ints.put(HUMIDITY_OFFSET + index(chunkPos), ChunkValueMap.MISSING);
+        }
+    }
+
+    @Override
+    public void clearHumidity() {
+        if (!Files.isDirectory(this.directory)) return;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : files) {
+                IntBuffer ints = map(path, false).asIntBuffer();
+                for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                    ints.put(HUMIDITY_OFFSET + i, ChunkValueMap.MISSING);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not clear humidity in {}", this.directory, e);
+        }
+    }
+
+    @Override
+    public int getStatueCount(long chunkPos) {
+        Page page = page(chunkPos, false);
+        return page != null ? page.ints.get(STATUE_OFFSET + index(chunkPos)) : 0;
+    }
+
+    @Override
+    public void setStatueCount(long chunkPos, int count) {
+        Page page = page(chunkPos, count != 0);
+        if (page != null) {
+            page.ints.put(STATUE_OFFSET + index(chunkPos), count);
+        }
+    }
+
+    @Override
+    public void save() {
+        // The OS writes dirty pages back on its own.
+    }
+
+    /** Forces every mapped region out to disk. */
+    @Override
+    public void close() {
+        for (Page page : this.pages.values()) {
+            page.bytes.force();
+        }
+        this.pages.clear();
+    }
+
+    /** Index of a chunk within its region's pages. */
+    private static int index(long chunkPos) {
+        return (ChunkPos.getZ(chunkPos) & (REGION_WIDTH - 1)) * REGION_WIDTH + (ChunkPos.getX(chunkPos) & (REGION_WIDTH - 1));
+    }
+
+    /**
+     * Gets the mapped region the given chunk resides in.
+     * @param create Whether to create the region file if it doesn't exist yet.
+     * @return The region, or {@code null} if it doesn't exist and {@code create} is false, or it couldn't be mapped.
+     */
+    @Nullable
+    private Page page(long chunkPos, boolean create) {
+        long regionKey = EvaRegion.regionKey(chunkPos);
+        Page page = this.pages.getAndMoveToLast(regionKey);
+        if (page != null) {
+            return page;
+        }
+
+        if (!create && this.absentRegions.contains(regionKey)) {
+            return null;
+        }
+
+        Path path = file(regionKey);
+        boolean exists = Files.exists(path);
+        if (!exists && !create) {
+            if (this.absentRegions.size() >= this.maxMappedRegions) {
+                this.absentRegions.clear();
+            }
+            this.absentRegions.add(regionKey);
+            return null;
+        }
+
+        MappedByteBuffer bytes;
+        try {
+            bytes = map(path, !exists);
+        } catch (IOException e) {
+            LOGGER.error("Could not map EVA region {}", path, e);
+            return null;
+        }
+
+        page = new Page(bytes, bytes.asIntBuffer());
+        this.absentRegions.remove(regionKey);
+        this.pages.putAndMoveToLast(regionKey, page);
+
+        // Dropping our reference lets the mapping be released. Any changes are already in the OS's page cache.
+        while (this.pages.size() > this.maxMappedRegions) {
+            this.pages.removeFirst();
+        }
+        return page;
+    }
+
+    /**
+     * Maps a region file, creating and initializing it if needed.
+     * <p>
+     * An existing file shorter than {@link #FILE_SIZE} was cut off by a crash before it was ever fully written
+     * (mapping it is what extends it). Mapping would zero-fill the rest, making its chunks read 0 humidity instead
+     * of {@link ChunkValueMap#MISSING}, and nothing in the short part can be trusted either, so it's initialized again.
+     */
+    private MappedByteBuffer map(Path path, boolean initialize) throws IOException {
+        Files.createDirectories(this.directory);
+        try (FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE
+        )) {
+            if (!initialize && channel.size() < FILE_SIZE) {
+                LOGGER.warn("EVA region {} is incomplete ({} of {} bytes). Resetting it", path, channel.size(), FILE_SIZE);
+                initialize = true;
+            }
+
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (initialize) {
+                IntBuffer ints = bytes.asIntBuffer();
+                for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                    ints.put(HUMIDITY_OFFSET + i, ChunkValueMap.MISSING);
+                    ints.put(STATUE_OFFSET + i, 0);
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private Path file(long regionKey) {
+        return this.directory.resolve(FILE_PREFIX + ChunkPos.getX(regionKey) + "." + ChunkPos.getZ(regionKey) + FILE_SUFFIX);
+    }
+
+    /** A mapped region file, along with an int view of it. */
+    private record Page(MappedByteBuffer bytes, IntBuffer ints) {}
+}
@@ -0,0 +1,392 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Loads and saves {@link EvaRegion}s, one file per region.
+ * <p>
+ * Regions are read lazily the first time a chunk inside them is touched,
+ * and only dirty regions are written back out when the game saves.
+ * Writing happens on a background thread, so saving doesn't stall the server tick.
+ * <p>
+ * Optionally, only a limited number of regions are kept in memory.
+ * When that limit is hit, the least recently used region is written out (if needed) and dropped.
+ * <p>
+ * Also optionally, changes can be logged to a {@link Journal}. Saving then only appends to the journal,
+ * and dirty regions are written out (and the journal cleared) once it grows large enough.
+ */
+public class RegionStorage implements EvaStore {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String FILE_PREFIX = "r.";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final String JOURNAL_FILE_NAME = "journal.bin";
+    /** Once the journal holds this many records, the next save writes out regions and clears it. */
+    private static final int COMPACT_AFTER_RECORDS = 1 << 16;
+
+    private final Path directory;
+    /** Max number of regions to keep in memory. 0 means no limit. */
+    private final int maxLoadedRegions;
+    /** Loaded regions, in least to most recently used order. */
+    private final Long2ObjectLinkedOpenHashMap<EvaRegion> regions = new Long2ObjectLinkedOpenHashMap<>();
+
+    /** Region files (and journal batches) are written on this thread, in the order they were queued. */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Waterworks EVA region writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Regions queued on {@link #writer} that haven't finished writing yet. */
+    private final Map<Long, EvaRegion.Snapshot> pendingWrites = new ConcurrentHashMap<>();
+
+    /** Log of changes since regions were last written. {@code null} if journaling is disabled. */
+    @Nullable
+    private final Journal journal;
+
+    // Nearby chunks are usually accessed together, so remember the last region we handed out.
+    private long lastRegionKey;
+    private EvaRegion lastRegion = null;
+
+    /**
+     * @param journaled Whether to log changes to a {@link Journal}.
+     *                  Any existing journal is replayed (and compacted) either way, so turning this off is safe.
+     */
+    public RegionStorage(Path directory, int maxLoadedRegions, boolean journaled) {
+        this.directory = directory;
+        this.maxLoadedRegions = maxLoadedRegions;
+
+        Path journalFile = directory.resolve(JOURNAL_FILE_NAME);
+        if (Files.exists(journalFile)) {
+            // Journal is still null here, so replaying doesn't log everything all over again.
+            Journal.replay(journalFile, this::replay);
+            saveDirty();
+            submit(() -> {
+                try {
+                    Files.deleteIfExists(journalFile);
+                } catch (IOException e) {
+                    LOGGER.error("Could not clear replayed EVA journal {}", journalFile, e);
+                }
+            });
+        }
+
+        this.journal = journaled ? new Journal(journalFile, this::submit) : null;
+    }
+
+    /** Gets the region the given packed {@link ChunkPos#toLong()} resides in, loading it from disk if needed. */
+    public EvaRegion get(long chunkPos) {
+        long regionKey = EvaRegion.regionKey(chunkPos);
+        if (this.lastRegion != null && this.lastRegionKey == regionKey) {
+            return this.lastRegion;
+        }
+
+        EvaRegion region = this.regions.getAndMoveToLast(regionKey);
+        if (region == null) {
+            region = read(regionKey);
+            this.regions.putAndMoveToLast(regionKey, region);
+            evictColdRegions();
+        }
+
+        this.lastRegionKey = regionKey;
+        this.lastRegion = region;
+        return region;
+    }
+
+    @Override
+    public int getHumidity(long chunkPos) {
+        return get(chunkPos).humidity.get(chunkPos);
+    }
+
+    @Override
+    public void setHumidity(long chunkPos, int amount) {
+        EvaRegion region = get(chunkPos);
+        region.humidity.put(chunkPos, amount);
+        region.setDirty();
+        log(Journal.SET_HUMIDITY, chunkPos, amount);
+    }
+
+    @Override
+    public int changeHumidity(long chunkPos, int delta, LongToIntFunction initial) {
+        EvaRegion region = get(chunkPos);
+        int amount = region.humidity.change(chunkPos, delta, initial);
+        region.setDirty();
+        log(Journal.SET_HUMIDITY, chunkPos, amount);
+        return amount;
+    }
+
+    @Override
+    public void removeHumidity(long chunkPos) {
+        EvaRegion region = get(chunkPos);
+        if (region.humidity.remove(chunkPos) != ChunkValueMap.MISSING) {
+            region.setDirty();
+            log(Journal.REMOVE_HUMIDITY, chunkPos, 0);
+        }
+    }
+
+    @Override
+    public int getStatueCount(long chunkPos) {
+        return get(chunkPos).statues.get(chunkPos);
+    }
+
+    @Override
+    public void setStatueCount(long chunkPos, int count) {
+        EvaRegion region = get(chunkPos);
+        if (count == 0) {
+            region.statues.remove(chunkPos);
+        } else {
+            region.statues.put(chunkPos, count);
+        }
+        region.setDirty();
+        log(Journal.SET_STATUES, chunkPos, count);
+    }
+
+    /** Keeps the journal from holding on to changes for more than about a second. */
+    @Override
+    public void tick() {
+        if (this.journal != null) {
+            this.journal.tick();
+        }
+    }
+
+    /** With a journal, this only appends to it until it's due for compacting. */
+    @Override
+    public void save() {
+        if (this.journal != null && this.journal.size() < COMPACT_AFTER_RECORDS) {
+            this.journal.flush();
+            return;
+        }
+
+        int saved = saveDirty();
+        if (this.journal != null) {
+            // Everything in the journal is now covered by the regions we just queued.
+            this.journal.truncate();
+        }
+        LOGGER.debug("Queued {} EVA region(s) to save to {}", saved, this.directory);
+    }
+
+    /**
+     * Queues every dirty region to be written out.
+     * @return The number of regions queued.
+     */
+    public int saveDirty() {
+        int saved = 0;
+        for (Long2ObjectMap.Entry<EvaRegion> entry : Long2ObjectMaps.fastIterable(this.regions)) {
+            if (entry.getValue().isDirty()) {
+                write(entry.getLongKey(), entry.getValue());
+                saved++;
+            }
+        }
+        return saved;
+    }
+
+    /** Writes out and drops the least recently used regions until we're back under {@link #maxLoadedRegions}. */
+    private void evictColdRegions() {
+        if (this.maxLoadedRegions <= 0) return;
+
+        while (this.regions.size() > this.maxLoadedRegions) {
+            long regionKey = this.regions.firstLongKey();
+            EvaRegion region = this.regions.removeFirst();
+            if (region.isDirty()) {
+                write(regionKey, region);
+            }
+        }
+    }
+
+    /** Clears humidity for every region, including ones that have not been loaded yet. */
+    @Override
+    public void clearHumidity() {
+        log(Journal.CLEAR_HUMIDITY, 0, 0);
+
+        for (EvaRegion region : this.regions.values()) {
+            region.humidity.clear();
+            region.setDirty();
+        }
+
+        // Regions that aren't loaded still have humidity on disk, or in a write that hasn't finished yet
+        // (which may be a region that has never been written at all). Clear those one at a time, so we don't
+        // blow past the loaded region limit.
+        LongSet regionKeys = new LongLinkedOpenHashSet(regionKeysOnDisk());
+        for (long regionKey : this.pendingWrites.keySet()) {
+            regionKeys.add(regionKey);
+        }
+
+        for (LongIterator it = regionKeys.iterator(); it.hasNext(); ) {
+            long regionKey = it.nextLong();
+            if (this.regions.containsKey(regionKey)) continue;
+
+            EvaRegion region = read(regionKey);
+            if (!region.humidity.isEmpty()) {
+                region.humidity.clear();
+                write(regionKey, region);
+            }
+        }
+    }
+
+    /**
+     * Writes out everything still dirty, then waits for every queued write to finish.
+     * Nothing may use this storage afterwards.
+     */
+    @Override
+    public void close() {
+        saveDirty();
+        if (this.journal != null) {
+            this.journal.truncate();
+        }
+
+        this.writer.shutdown();
+        try {
+            if (!this.writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.error("Timed out waiting for EVA regions to finish saving to {}", this.directory);
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error("Interrupted waiting for EVA regions to finish saving to {}", this.directory, e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private EvaRegion read(long regionKey) {
+        EvaRegion region = new EvaRegion();
+
+        // If this region is still waiting to be written, what's on disk is stale.
+        EvaRegion.Snapshot pending = this.pendingWrites.get(regionKey);
+        if (pending != null) {
+            region.load(pending);
+            return region;
+        }
+
+        File file = file(regionKey);
+        if (!file.exists()) {
+            return region;
+        }
+
+        try {
+            region.load(NbtIo.readCompressed(file));
+        } catch (IOException e) {
+            LOGGER.error("Could not read EVA region {}", file, e);
+        }
+        return region;
+    }
+
+    /**
+     * Queues a region to be written out.
+     * <p>
+     * Copying the region is cheap, so that's the only part done on the calling (server) thread.
+     * Building the NBT, compressing it, and writing it all happen on {@link #writer}.
+     */
+    private void write(long regionKey, EvaRegion region) {
+        EvaRegion.Snapshot snapshot = region.snapshot();
+        this.pendingWrites.put(regionKey, snapshot);
+
+        submit(() -> writeSnapshot(regionKey, snapshot));
+    }
+
+    /** Runs a task on {@link #writer}, or right here if the writer has already been shut down. */
+    private void submit(Runnable task) {
+        if (this.writer.isShutdown()) {
+            task.run();
+        } else {
+            this.writer.execute(task);
+        }
+    }
+
+    private void log(byte type, long chunkPos, int value) {
+        if (this.journal != null) {
+            this.journal.append(type, chunkPos, value);
+        }
+    }
+
+    /** Applies a {@link Journal} record. */
+    private void replay(byte type, long chunkPos, int value) {
+        switch (type) {
+            case Journal.SET_HUMIDITY -> setHumidity(chunkPos, value);
+            case Journal.REMOVE_HUMIDITY -> removeHumidity(chunkPos);
+            case Journal.SET_STATUES -> setStatueCount(chunkPos, value);
+            case Journal.CLEAR_HUMIDITY -> clearHumidity();
+            default -> LOGGER.warn("Skipping unknown EVA journal record type {}", type);
+        }
+    }
+
+    /** Runs on {@link #writer}. */
+    private void writeSnapshot(long regionKey, EvaRegion.Snapshot snapshot) {
+        File file = file(regionKey);
+
+        try {
+            if (snapshot.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+
+            CompoundTag tag = snapshot.serialize();
+            Files.createDirectories(this.directory);
+
+            // Write to a temp file first so a crash mid-write can't leave a truncated region behind.
+            File tmpFile = new File(file.getPath() + ".tmp");
+            NbtIo.writeCompressed(tag, tmpFile);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Could not write EVA region {}", file, e);
+        } finally {
+            // A newer snapshot may have been queued in the meantime. Leave that one alone.
+            this.pendingWrites.remove(regionKey, snapshot);
+        }
+    }
+
+    private File file(long regionKey) {
+        String name = FILE_PREFIX + ChunkPos.getX(regionKey) + "." + ChunkPos.getZ(regionKey) + FILE_SUFFIX;
+        return this.directory.resolve(name).toFile();
+    }
+
+    /** Lists the keys of every region that has a file on disk. */
+    private LongList regionKeysOnDisk() {
+        LongList keys = new LongArrayList();
+        if (!Files.isDirectory(this.directory)) {
+            return keys;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                String[] coords = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()).split("\\.");
+                try {
+                    keys.add(ChunkPos.asLong(Integer.parseInt(coords[0]), Integer.parseInt(coords[1])));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    LOGGER.warn("Ignoring unrecognized file in EVA region folder: {}", path);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not list EVA regions in {}", this.directory, e);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,18 @@
+/****************************************************************************************
+ * This file is part of Waterworks, a Minecraft mod that changes water dynamics.
+ * Copyright (C) 2024 Mimickal (Mia Moretti).
+ *
+ * Waterworks is free software under the GNU Affero General Public License v3.0.
+ * See LICENSE or <https://www.gnu.org/licenses/agpl-3.0.en.html> for more information.
+ ****************************************************************************************/
+package mimickal.minecraft.waterworks.eva.storage;
+
+/** The {@link EvaStore} implementations a level can use. */
+public enum StorageMode {
+    /** Per-region files alongside the level's other saved data. See {@link RegionStorage}. */
+    REGION,
+    /** Inside each chunk's own saved data. See {@link ChunkAttachedStore}. */
+    CHUNK,
+    /** Memory-mapped region files, off the Java heap. See {@link MappedStore}. */
+    MAPPED,
+}